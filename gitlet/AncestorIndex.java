@@ -0,0 +1,353 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/**
+ * Persistent index answering ancestry queries over the commit
+ * graph without reading any commit. Commits are numbered by
+ * ordinal (their position in the commit journal, so parents always
+ * come before their children) and each has a fixed-width record:
+ * its generation number (one more than the largest generation of
+ * its parents), its depth along first parents, the ordinals of its
+ * parents, a skip pointer to a first-parent ancestor and the
+ * nearest merge commit on its first-parent chain.
+ * The skip pointers follow Myers' skew-binary scheme: one pointer
+ * per commit suffices to reach any first-parent ancestor in
+ * O(log depth) steps, so the index stays a constant size per commit
+ * while giving the same bounds as a full binary-lifting table.
+ * Ancestry and merge-base queries jump over stretches of history
+ * without merges and prune everything below the generation of
+ * the answer.
+ * The index file is memory-mapped and new records are appended
+ * to it when it is saved.
+ * @author Oumar Balde
+ */
+public class AncestorIndex {
+
+    /** AncestorIndex constructor. Maps the index stored in FILE,
+     * if any.
+     * @param file in which the index is stored
+     */
+    AncestorIndex(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] header = new byte[HEADER_SIZE];
+            raf.readFully(header);
+            RecordInput in = new RecordInput(header, MAGIC);
+            if (in.version() != VERSION) {
+                throw Utils.error("Unsupported ancestor index version %d.",
+                        in.version());
+            }
+            long records = (raf.length() - HEADER_SIZE) / RECORD_SIZE;
+            long length = HEADER_SIZE + records * RECORD_SIZE;
+            if (raf.length() != length) {
+                raf.setLength(length);
+            }
+            _stored = (int) records;
+            _records = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, records * RECORD_SIZE).asIntBuffer();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Accessor method that gets the number of indexed commits.
+     * @return number of commits
+     */
+    public int size() {
+        return _stored + _added;
+    }
+
+    /** Indexes a new commit, whose ordinal is size().
+     * @param parent ordinal of the first parent, or -1
+     * @param secondParent ordinal of the second parent, or -1
+     * @return ordinal of the new commit
+     */
+    public int add(int parent, int secondParent) {
+        int commit = size();
+        int generation = 1, depth = 0, jump = commit;
+        int lastMerge = secondParent == -1 ? -1 : commit;
+        if (parent != -1) {
+            generation = generation(parent) + 1;
+            depth = depth(parent) + 1;
+            int jump1 = jump(parent);
+            if (depth(parent) - depth(jump1)
+                    == depth(jump1) - depth(jump(jump1))) {
+                jump = jump(jump1);
+            } else {
+                jump = parent;
+            }
+            if (lastMerge == -1) {
+                lastMerge = lastMerge(parent);
+            }
+        }
+        if (secondParent != -1) {
+            generation = Math.max(generation, generation(secondParent) + 1);
+        }
+        if ((_added + 1) * RECORD_INTS > _pending.length) {
+            _pending = Arrays.copyOf(_pending, 2 * _pending.length);
+        }
+        int i = _added * RECORD_INTS;
+        _pending[i + GENERATION] = generation;
+        _pending[i + DEPTH] = depth;
+        _pending[i + PARENT] = parent;
+        _pending[i + SECOND_PARENT] = secondParent;
+        _pending[i + JUMP] = jump;
+        _pending[i + LAST_MERGE] = lastMerge;
+        _added += 1;
+        return commit;
+    }
+
+    /** Accessor method that gets the generation number of COMMIT.
+     * @param commit ordinal of a commit
+     * @return generation, 1 for the initial commit
+     */
+    public int generation(int commit) {
+        return field(commit, GENERATION);
+    }
+
+    /** Accessor method that gets the number of first parents
+     * between COMMIT and the initial commit.
+     * @param commit ordinal of a commit
+     * @return depth, 0 for the initial commit
+     */
+    public int depth(int commit) {
+        return field(commit, DEPTH);
+    }
+
+    /** Accessor method that gets the first parent of COMMIT.
+     * @param commit ordinal of a commit
+     * @return ordinal of the parent, or -1
+     */
+    public int parent(int commit) {
+        return field(commit, PARENT);
+    }
+
+    /** Accessor method that gets the second parent of COMMIT.
+     * @param commit ordinal of a commit
+     * @return ordinal of the second parent, or -1
+     */
+    public int secondParent(int commit) {
+        return field(commit, SECOND_PARENT);
+    }
+
+    /** Finds the first-parent ancestor of COMMIT at the given
+     * DEPTH in O(log depth) steps.
+     * @param commit ordinal of a commit
+     * @param depth at most depth(COMMIT)
+     * @return ordinal of the ancestor
+     */
+    public int levelAncestor(int commit, int depth) {
+        while (depth(commit) > depth) {
+            int jump = jump(commit);
+            commit = depth(jump) >= depth ? jump : parent(commit);
+        }
+        return commit;
+    }
+
+    /** Checks whether commit A is an ancestor of (or equal to)
+     * commit B.
+     * @param a ordinal of the candidate ancestor
+     * @param b ordinal of the descendant
+     * @return true iff A is reachable from B through parents
+     */
+    public boolean isAncestor(int a, int b) {
+        int generation = generation(a);
+        int depth = depth(a);
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        HashSet<Integer> visited = new HashSet<>();
+        stack.push(b);
+        while (!stack.isEmpty()) {
+            int commit = stack.pop();
+            if (generation(commit) < generation) {
+                continue;
+            }
+            if (depth(commit) >= depth
+                    && levelAncestor(commit, depth) == a) {
+                return true;
+            }
+            for (int merge = lastMerge(commit);
+                 merge != -1 && generation(merge) > generation
+                         && visited.add(merge);
+                 merge = lastMerge(parent(merge))) {
+                stack.push(secondParent(merge));
+            }
+        }
+        return false;
+    }
+
+    /** Finds a best common ancestor of A and B: one that is not
+     * an ancestor of another common ancestor. Histories without
+     * merges are answered in O(log depth) steps; otherwise only
+     * commits above the first-parent common ancestor are visited.
+     * @param a ordinal of a commit
+     * @param b ordinal of a commit
+     * @return ordinal of the merge base
+     */
+    public int mergeBase(int a, int b) {
+        if (isAncestor(a, b)) {
+            return a;
+        } else if (isAncestor(b, a)) {
+            return b;
+        }
+        int base = chainBase(a, b);
+        if (mergeDepth(a) <= depth(base) && mergeDepth(b) <= depth(base)) {
+            return base;
+        }
+        HashMap<Integer, Integer> sides = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((c1, c2) ->
+                c1.equals(c2) ? 0
+                : generation(c1) != generation(c2)
+                ? Integer.compare(generation(c2), generation(c1))
+                : Integer.compare(c2, c1));
+        sides.put(a, 1);
+        sides.put(b, 2);
+        queue.add(a);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int commit = queue.poll();
+            int side = sides.get(commit);
+            if (side == 3) {
+                return commit;
+            } else if (generation(commit) <= generation(base)) {
+                continue;
+            }
+            for (int parent : new int[] {
+                parent(commit), secondParent(commit) }) {
+                if (parent == -1) {
+                    continue;
+                }
+                Integer old = sides.get(parent);
+                if (old == null) {
+                    queue.add(parent);
+                    sides.put(parent, side);
+                } else {
+                    sides.put(parent, old | side);
+                }
+            }
+        }
+        return base;
+    }
+
+    /** Appends the commits added since the index was last saved
+     * to its file.*/
+    public void save() {
+        if (_written == _added) {
+            return;
+        }
+        ByteBuffer records =
+                ByteBuffer.allocate((_added - _written) * RECORD_SIZE);
+        records.asIntBuffer().put(_pending, _written * RECORD_INTS,
+                (_added - _written) * RECORD_INTS);
+        if (_file.isFile()) {
+            Utils.appendContents(_file, records.array());
+        } else {
+            Utils.writeContents(_file,
+                    new RecordOutput(MAGIC, VERSION).toByteArray(),
+                    records.array());
+        }
+        _written = _added;
+    }
+
+    /** Finds the common ancestor of A and B along first parents
+     * only, in O(log depth) steps.
+     * @param a ordinal of a commit
+     * @param b ordinal of a commit
+     * @return ordinal of the deepest common first-parent ancestor
+     */
+    private int chainBase(int a, int b) {
+        int depth = Math.min(depth(a), depth(b));
+        a = levelAncestor(a, depth);
+        b = levelAncestor(b, depth);
+        while (a != b) {
+            if (jump(a) != jump(b)) {
+                a = jump(a);
+                b = jump(b);
+            } else {
+                a = parent(a);
+                b = parent(b);
+            }
+        }
+        return a;
+    }
+
+    /** Gets the depth of the nearest merge commit on the
+     * first-parent chain of COMMIT.
+     * @param commit ordinal of a commit
+     * @return depth of the merge, or -1 if there is none
+     */
+    private int mergeDepth(int commit) {
+        int merge = lastMerge(commit);
+        return merge == -1 ? -1 : depth(merge);
+    }
+
+    /** Accessor method that gets the skip pointer of COMMIT.
+     * @param commit ordinal of a commit
+     * @return ordinal of a first-parent ancestor (COMMIT itself
+     *         for the initial commit)
+     */
+    private int jump(int commit) {
+        return field(commit, JUMP);
+    }
+
+    /** Accessor method that gets the nearest merge commit on the
+     * first-parent chain of COMMIT, COMMIT included.
+     * @param commit ordinal of a commit, or -1
+     * @return ordinal of the merge, or -1 if there is none
+     */
+    private int lastMerge(int commit) {
+        return commit == -1 ? -1 : field(commit, LAST_MERGE);
+    }
+
+    /** Reads one field of the record of COMMIT.
+     * @param commit ordinal of a commit
+     * @param field offset of the field in the record
+     * @return value of the field
+     */
+    private int field(int commit, int field) {
+        if (commit < _stored) {
+            return _records.get(commit * RECORD_INTS + field);
+        }
+        return _pending[(commit - _stored) * RECORD_INTS + field];
+    }
+
+    /** Kind of ancestor index files.*/
+    static final String MAGIC = "GLAI";
+    /** Current version of the ancestor index format.*/
+    static final int VERSION = 1;
+    /** Size of the file header: kind and version.*/
+    private static final int HEADER_SIZE = 5;
+    /** Offsets of the fields of a record, in ints.*/
+    private static final int GENERATION = 0, DEPTH = 1, PARENT = 2,
+        SECOND_PARENT = 3, JUMP = 4, LAST_MERGE = 5;
+    /** Number of ints in a record.*/
+    private static final int RECORD_INTS = 6;
+    /** Size of a record in bytes.*/
+    private static final int RECORD_SIZE = 4 * RECORD_INTS;
+
+    /** File in which the index is stored.*/
+    private final File _file;
+    /** Records stored in the file, or null if there are none.*/
+    private IntBuffer _records;
+    /** Number of records stored in the file.*/
+    private int _stored;
+    /** Records added since the index was opened.*/
+    private int[] _pending = new int[16 * RECORD_INTS];
+    /** Number of records added since the index was opened.*/
+    private int _added;
+    /** Number of added records already appended to the file.*/
+    private int _written;
+}
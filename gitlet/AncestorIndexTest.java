@@ -0,0 +1,95 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Random;
+
+/** Tests of the ancestor index.
+ *  @author Oumar Balde
+ */
+public class AncestorIndexTest {
+
+    /** Builds a random history of N commits with occasional merges
+     *  in INDEX, returning the set of ancestors of each commit. */
+    private static ArrayList<BitSet> randomHistory(AncestorIndex index,
+                                                   int n, Random rand) {
+        ArrayList<BitSet> ancestors = new ArrayList<>();
+        for (int c = 0; c < n; c += 1) {
+            int parent = c == 0 ? -1 : c - 1 - rand.nextInt(Math.min(c, 8));
+            int second = c > 1 && rand.nextInt(5) == 0
+                ? rand.nextInt(c) : -1;
+            if (second == parent) {
+                second = -1;
+            }
+            assertEquals(c, index.add(parent, second));
+            BitSet set = new BitSet();
+            set.set(c);
+            if (parent != -1) {
+                set.or(ancestors.get(parent));
+            }
+            if (second != -1) {
+                set.or(ancestors.get(second));
+            }
+            ancestors.add(set);
+        }
+        return ancestors;
+    }
+
+    /** Checks INDEX against the ANCESTORS sets on random pairs. */
+    private static void check(AncestorIndex index,
+                              ArrayList<BitSet> ancestors, Random rand) {
+        int n = ancestors.size();
+        for (int k = 0; k < 2000; k += 1) {
+            int a = rand.nextInt(n), b = rand.nextInt(n);
+            assertEquals(ancestors.get(b).get(a), index.isAncestor(a, b));
+            int base = index.mergeBase(a, b);
+            BitSet common = (BitSet) ancestors.get(a).clone();
+            common.and(ancestors.get(b));
+            assertTrue(common.get(base));
+            for (int c = common.nextSetBit(0); c >= 0;
+                 c = common.nextSetBit(c + 1)) {
+                assertFalse(c != base && ancestors.get(c).get(base));
+            }
+        }
+    }
+
+    @Test
+    public void randomHistories() throws IOException {
+        File file = File.createTempFile("ancestry", null);
+        file.delete();
+        try {
+            Random rand = new Random(61);
+            AncestorIndex index = new AncestorIndex(file);
+            ArrayList<BitSet> ancestors = randomHistory(index, 1500, rand);
+            check(index, ancestors, rand);
+            index.save();
+            index = new AncestorIndex(file);
+            assertEquals(1500, index.size());
+            check(index, ancestors, rand);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void longLinearHistory() {
+        AncestorIndex index = new AncestorIndex(new File("no-such-index"));
+        int n = 1000000;
+        index.add(-1, -1);
+        for (int c = 1; c < n; c += 1) {
+            index.add(c - 1, -1);
+        }
+        int branch = index.add(n / 2, -1);
+        assertEquals(n - 1, index.depth(n - 1));
+        assertEquals(12345, index.levelAncestor(n - 1, 12345));
+        assertTrue(index.isAncestor(3, n - 1));
+        assertFalse(index.isAncestor(n / 2 + 1, branch));
+        assertEquals(n / 2, index.mergeBase(n - 1, branch));
+    }
+}
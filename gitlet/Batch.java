@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runner of a script of gitlet commands in a single process. Each
+ * line holds one command and its operands, split as a shell would:
+ * on blanks, except inside single or double quotes (where a
+ * backslash escapes a double quote or a backslash). Blank lines and
+ * lines starting with # are skipped.
+ * The repository is opened once and kept resident. The changes
+ * made by the commands run so far are saved before each command
+ * (only the state they modified is written, so commands that change
+ * nothing cost nothing to save), and at the end of the script. A
+ * command that ends early leaves the repository unchanged (commands
+ * check their preconditions before changing any state), so the
+ * following commands see the same state as they would as separate
+ * processes, and each command prints the same output. A command
+ * that fails with an error is reported as the command-line program
+ * would report it, and its partial changes are discarded: the
+ * repository is reopened from disk, which already holds the changes
+ * of the commands before it, and the script goes on.
+ * If a daemon is running, each command is forwarded to it instead.
+ * @author Oumar Balde
+ */
+public class Batch {
+
+    /** Batch constructor.
+     * @param input source of the commands
+     */
+    Batch(Reader input) {
+        _input = new BufferedReader(input);
+    }
+
+    /** Runs every command of the script.*/
+    public void run() throws IOException {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), 1 << 16), false));
+        try {
+            runCommands();
+        } finally {
+            System.out.flush();
+            System.setOut(stdout);
+        }
+    }
+
+    /** Splits LINE into a command and its operands.
+     * @param line a line of the script
+     * @return the words of the line, or null if a quote is not closed
+     */
+    static List<String> split(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else if (quote == '"' && c == '\\' && i + 1 < line.length()
+                    && (line.charAt(i + 1) == '"'
+                    || line.charAt(i + 1) == '\\')) {
+                i += 1;
+                word.append(line.charAt(i));
+            } else {
+                word.append(c);
+            }
+        }
+        if (quote != 0) {
+            return null;
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /** Reads and runs the commands.*/
+    private void runCommands() throws IOException {
+        boolean daemon = Main.DAEMON_SOCKET.exists();
+        String line;
+        try {
+            while ((line = _input.readLine()) != null) {
+                if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                    continue;
+                }
+                List<String> words = split(line);
+                if (words == null) {
+                    System.out.println("Unterminated quote in: " + line);
+                    continue;
+                }
+                String[] args = words.toArray(new String[0]);
+                if (NOT_IN_BATCH.contains(args[0])) {
+                    System.out.println("Cannot run " + args[0]
+                            + " in a batch.");
+                    continue;
+                }
+                if (daemon) {
+                    System.out.flush();
+                    if (Daemon.forward(Main.DAEMON_SOCKET, args)) {
+                        continue;
+                    }
+                    daemon = false;
+                }
+                save();
+                run(args);
+            }
+        } finally {
+            save();
+        }
+    }
+
+    /** Runs ARGS in this process against the resident repository.
+     * @param args command and operands
+     */
+    private void run(String[] args) {
+        if (_repo == null && Main.GITLETDIR.isDirectory()) {
+            _repo = new Repo(Main.GITLETDIR);
+        }
+        Main.setResident(_repo);
+        try {
+            Main.run(args);
+        } catch (Main.ExitException excp) {
+            return;
+        } catch (IOException | RuntimeException excp) {
+            System.out.flush();
+            System.err.print("Exception in thread \"main\" ");
+            excp.printStackTrace();
+            _repo = null;
+        }
+    }
+
+    /** Saves the resident repository, if it has been opened.*/
+    private void save() {
+        if (_repo != null) {
+            _repo.save();
+        }
+    }
+
+    /** Commands that cannot appear in a script.*/
+    private static final Set<String> NOT_IN_BATCH = Set.of("batch", "daemon");
+
+    /** Source of the commands.*/
+    private final BufferedReader _input;
+    /** The resident repository, or null until it exists or after a
+     * command failed.*/
+    private Repo _repo;
+}
@@ -0,0 +1,28 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+/** Tests of the splitting of batch scripts into commands.
+ *  @author Oumar Balde
+ */
+public class BatchTest {
+
+    @Test
+    public void splitsLikeAShell() {
+        assertEquals(Arrays.asList("add", "wug.txt"),
+                     Batch.split("  add\twug.txt "));
+        assertEquals(Arrays.asList("commit", "version 1 of wug.txt"),
+                     Batch.split("commit \"version 1 of wug.txt\""));
+        assertEquals(Arrays.asList("commit", "it's \"quoted\" \\"),
+                     Batch.split("commit \"it's \\\"quoted\\\" \\\\\""));
+        assertEquals(Arrays.asList("find", "a \\\"b\\\""),
+                     Batch.split("find 'a \\\"b\\\"'"));
+        assertEquals(Arrays.asList("commit", ""),
+                     Batch.split("commit \"\""));
+        assertEquals(Arrays.asList("x", "ab cd"), Batch.split("x ab' 'cd"));
+        assertNull(Batch.split("commit \"unterminated"));
+    }
+}
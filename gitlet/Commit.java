@@ -1,91 +1,187 @@
 package gitlet;
 
 
-import java.io.Serializable;
-import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import java.util.TreeMap;
-import java.time.LocalDateTime;
 
 /**
  * Class representing a Commit object.
  * @author Oumar Balde
  */
 
-public class Commit implements Serializable {
+public class Commit {
 
     /**
      * Commit default constructor.
-     * Initializes _message and _timeStamp.
+     * Initializes _message and _time.
      * This commit doesn't track any file.
      * @param message of this commit
      */
     Commit(String message) {
         _message = message;
-        _timeStamp = "Wed Dec 31 16:00:00 1969 -0800";
+        _time = 0;
+        _tree = Tree.EMPTY;
     }
 
     /**
      * Commit secondary constructor.
      * Creates a new commit which tracks
-     * the same files as commit0.
+     * the same files as commit0, sharing its tree.
      * @param commit0 - parent of this commit
      * @param message of this commit
      */
     Commit(Commit commit0, String message) {
-        _filesTracked =
-                (TreeMap<String, byte[]>) commit0._filesTracked.clone();
+        _tree = commit0._tree;
+        _objects = commit0._objects;
         _message = message;
-        LocalDateTime current = LocalDateTime.now();
-        DateTimeFormatter formatter =
-                DateTimeFormatter.ofPattern("E MMM DD HH:mm:ss yyyy -0800");
-        _timeStamp = current.format(formatter);
+        _parent = commit0.getSha1();
+        _time = System.currentTimeMillis();
     }
 
     /**
-     * Helper function that Serializes a COMMIT before
-     * storing it into a Byte Array.
-     * @param s - serializable object
+     * Merge commit constructor.
+     * Creates a new commit which tracks
+     * the same files as commit0 and has commit1
+     * as its second parent.
+     * @param commit0 - first parent of this commit
+     * @param commit1 - second parent of this commit
+     * @param message of this commit
+     */
+    Commit(Commit commit0, Commit commit1, String message) {
+        this(commit0, message);
+        _secondParent = commit1.getSha1();
+    }
+
+    /**
+     * Commit constructor used when reading a stored commit.
+     * Its trees are read from OBJECTS the first time they are
+     * needed.
+     * @param sha1 id of the commit
+     * @param bytes encoded commit, as produced by encode()
+     * @param objects object store holding the commit's trees
+     */
+    private Commit(String sha1, byte[] bytes, ObjectStore objects) {
+        RecordInput in = new RecordInput(bytes, MAGIC);
+        if (in.version() != VERSION) {
+            throw Utils.error("Unsupported commit format version %d.",
+                    in.version());
+        }
+        _sha1 = sha1;
+        _time = in.readLong();
+        _message = in.readString();
+        int parents = in.readVarInt();
+        if (parents > 0) {
+            _parent = in.readHash();
+        }
+        if (parents > 1) {
+            _secondParent = in.readHash();
+            in.skip((parents - 2) * Utils.UID_LENGTH / 2);
+        }
+        _tree = in.readHash();
+        _objects = objects;
+    }
+
+    /**
+     * Decodes a commit read from the object store.
+     * @param sha1 id of the commit
+     * @param bytes encoded commit
+     * @param objects object store holding the commit's trees
+     * @return the commit
+     */
+    public static Commit decode(String sha1, byte[] bytes,
+                                ObjectStore objects) {
+        return new Commit(sha1, bytes, objects);
+    }
+
+    /**
+     * Encodes this commit in gitlet's binary record format:
+     * the time, the message, the parent ids, and the id of
+     * the tree of the tracked files. Changes to the tracked
+     * files must have been written with writeTree.
+     * The commit's id is the SHA-1 hash of this encoding, so
+     * it costs the same however many files are tracked, and
+     * depends only on this format, not on the JVM or classes.
      * @return byte[] - array of bytes
-     * @throws IOException -
      */
-    public static byte[] serialized(Serializable s) throws IOException {
-        return Utils.serialize(s);
+    public byte[] encode() {
+        if (!_changes.isEmpty()) {
+            throw Utils.error("Commit tree has not been written.");
+        }
+        RecordOutput out = new RecordOutput(MAGIC, VERSION);
+        out.writeLong(_time);
+        out.writeString(_message);
+        String[] parents = getParents();
+        out.writeVarInt(parents.length);
+        for (String parent : parents) {
+            out.writeHash(parent);
+        }
+        out.writeHash(_tree);
+        return out.toByteArray();
     }
 
     /**
-     * Adds "files" to the files that this commit
+     * Stores the trees of this commit's files in OBJECTS. Only
+     * the trees of the directories holding files added or
+     * removed since the commit was created are written.
+     * @param objects object store in which to put the trees
+     */
+    public void writeTree(ObjectStore objects) {
+        _tree = Tree.update(objects, _tree, _changes);
+        _changes.clear();
+        _objects = objects;
+    }
+
+    /**
+     * Adds "files" (file names mapped to blob ids)
+     * to the files that this commit
      * is tracking iff said file does not already exist
      * in the commit.
      * If it exists, just replace it.
      * @param files to be added
      */
-    public void addFiles(TreeMap<String, byte[]> files) {
-        if (files.size() == 0) {
-            return;
-        }
-        for (String key : files.keySet()) {
-            if (_filesTracked.containsKey(key)) {
-                _filesTracked.replace(key, files.get(key));
-            } else {
-                _filesTracked.put(key, files.get(key));
-            }
-        }
+    public void addFiles(TreeMap<String, String> files) {
+        _changes.putAll(files);
     }
 
     /**
      * Untrack files that have been staged for removal.
      * @param files staged for removal
      */
-    public void removeFiles(TreeMap<String, byte[]> files) {
-        for (String key : files.keySet()) {
-            if (_filesTracked.containsKey(key)) {
-                _filesTracked.remove(key);
-            }
+    public void removeFiles(TreeMap<String, String> files) {
+        for (String fileName : files.keySet()) {
+            _changes.put(fileName, null);
         }
     }
 
 
+    /** Accessor method that gets the id of this commit's parent.
+     * @return parent id, or null for the initial commit
+     */
+    public String getParent() {
+        return _parent;
+    }
+    /** Accessor method that gets the id of this commit's second
+     * parent.
+     * @return second parent id, or null unless this is a merge commit
+     */
+    public String getSecondParent() {
+        return _secondParent;
+    }
+    /** Accessor method that gets the ids of all parents.
+     * @return parent ids, first parent first
+     */
+    public String[] getParents() {
+        if (_parent == null) {
+            return new String[0];
+        } else if (_secondParent == null) {
+            return new String[] { _parent };
+        } else {
+            return new String[] { _parent, _secondParent };
+        }
+    }
     public void setSha1(String sha1) {
         _sha1 = sha1;
     }
@@ -93,22 +189,88 @@ public class Commit implements Serializable {
         return _sha1;
     }
     public String getTime() {
-        return _timeStamp;
+        return formatTime(_time);
+    }
+    /** Accessor method that gets the time of this commit.
+     * @return time in milliseconds since the epoch
+     */
+    public long getTimeMillis() {
+        return _time;
+    }
+
+    /** Formats a commit time for display.
+     * @param time in milliseconds since the epoch
+     * @return formatted time
+     */
+    static String formatTime(long time) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(time));
     }
     public String getMessage() {
         return _message;
     }
-    public TreeMap<String, byte[]> getFilesTracked() {
-        return _filesTracked;
+    /** Accessor method that gets the id of the tree of the files
+     * tracked by this commit, as of the last writeTree.
+     * @return tree id
+     */
+    public String getTree() {
+        return _tree;
+    }
+    /** Accessor method that gets the blob id of one tracked file,
+     * reading only the trees on its path.
+     * @param path of the file
+     * @return blob id, or null if the file is not tracked
+     */
+    public String getFile(String path) {
+        if (_changes.containsKey(path)) {
+            return _changes.get(path);
+        }
+        return Tree.lookup(_objects, _tree, path);
+    }
+    /** Accessor method that gets every tracked file. The map is
+     * built from the trees on each call and is not kept by the
+     * commit, so commits only share their (immutable) trees.
+     * @return new map from file paths to blob ids
+     */
+    public TreeMap<String, String> getFilesTracked() {
+        TreeMap<String, String> files = new TreeMap<>();
+        Tree.flatten(_objects, _tree, "", files);
+        for (Map.Entry<String, String> entry : _changes.entrySet()) {
+            if (entry.getValue() == null) {
+                files.remove(entry.getKey());
+            } else {
+                files.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return files;
     }
 
+    /** Kind of commit records.*/
+    static final String MAGIC = "GLCM";
+    /** Current version of the commit record format.*/
+    static final int VERSION = 2;
+    /** Format in which commit times are displayed.*/
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z")
+                    .withZone(ZoneId.systemDefault());
+
     /** This Commit's message.*/
     private String _message;
-    /** Time at which this Commit was created.*/
-    private String _timeStamp;
-    /** Files tracked by this commit. Maps file names to their
-     * serialized content.*/
-    private TreeMap<String, byte[]> _filesTracked = new TreeMap<>();
-    /** This commit SHA-1 hashcode.*/
+    /** Time at which this Commit was created, in milliseconds
+     * since the epoch.*/
+    private long _time;
+    /** Id of the tree of the files tracked by this commit.*/
+    private String _tree;
+    /** Files added (mapped to their blob ids) or removed (mapped
+     * to null) since this commit's tree was last written.*/
+    private final TreeMap<String, String> _changes = new TreeMap<>();
+    /** Object store holding this commit's trees, or null if it
+     * only has the empty tree.*/
+    private ObjectStore _objects;
+    /** SHA-1 id of this commit's parent.*/
+    private String _parent;
+    /** SHA-1 id of the branch merged into this commit, if any.*/
+    private String _secondParent;
+    /** This commit SHA-1 hashcode. It is the name of the object
+     * the commit is stored in.*/
     private String _sha1;
 }
@@ -0,0 +1,240 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Persistent table of the commits' ids, times and messages, so that
+ * log, global-log and find can list commits without reading them.
+ * Commits are numbered by ordinal, as in the AncestorIndex (which
+ * holds their parents and generation numbers), and each has a
+ * fixed-width record in the commit-graph file: its id, its time and
+ * the position and length of its message in a separate message heap.
+ * Both files are memory-mapped and new records are appended to them
+ * when the graph is saved. Commits are looked up by id through a
+ * HashIndex, which is rewritten once enough commits have been added
+ * since it was last written.
+ * @author Oumar Balde
+ */
+public class CommitGraph {
+
+    /** CommitGraph constructor. Maps the graph stored in FILE, the
+     * messages stored in HEAP and the hash index stored in INDEX,
+     * if any.
+     * @param file in which the records are stored
+     * @param heap in which the messages are stored
+     * @param index in which the hash index is stored
+     */
+    CommitGraph(File file, File heap, File index) {
+        _file = file;
+        _heap = heap;
+        _index = new HashIndex(index);
+        if (!file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             RandomAccessFile heapRaf = new RandomAccessFile(heap, "r")) {
+            byte[] header = new byte[HEADER_SIZE];
+            raf.readFully(header);
+            RecordInput in = new RecordInput(header, MAGIC);
+            if (in.version() != VERSION) {
+                throw Utils.error("Unsupported commit graph version %d.",
+                        in.version());
+            }
+            long records = (raf.length() - HEADER_SIZE) / RECORD_SIZE;
+            long length = HEADER_SIZE + records * RECORD_SIZE;
+            if (raf.length() != length) {
+                raf.setLength(length);
+            }
+            _stored = (int) records;
+            _records = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, records * RECORD_SIZE);
+            _heapSize = heapRaf.length();
+            _messages = heapRaf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, _heapSize);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Accessor method that gets the number of commits in the graph.
+     * @return number of commits
+     */
+    public int size() {
+        return _stored + _addedIDs.size();
+    }
+
+    /** Adds COMMIT to the graph, as ordinal size().
+     * @param commit a stored commit
+     * @return ordinal of the commit
+     */
+    public int add(Commit commit) {
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        if (_addedIDs.size() == _addedTimes.length) {
+            _addedTimes = Arrays.copyOf(_addedTimes, 2 * _addedTimes.length);
+        }
+        _addedTimes[_addedIDs.size()] = commit.getTimeMillis();
+        _addedIDs.add(commit.getSha1());
+        _addedMessages.add(message);
+        return size() - 1;
+    }
+
+    /** Accessor method that gets the id of commit C.
+     * @param c ordinal of a commit
+     * @return id of the commit
+     */
+    public String id(int c) {
+        if (c >= _stored) {
+            return _addedIDs.get(c - _stored);
+        }
+        byte[] hash = new byte[HASH_SIZE];
+        _records.get(c * RECORD_SIZE, hash);
+        return Utils.toHex(hash);
+    }
+
+    /** Accessor method that gets the time of commit C.
+     * @param c ordinal of a commit
+     * @return time in milliseconds since the epoch
+     */
+    public long time(int c) {
+        if (c >= _stored) {
+            return _addedTimes[c - _stored];
+        }
+        return _records.getLong(c * RECORD_SIZE + HASH_SIZE);
+    }
+
+    /** Accessor method that gets the message of commit C.
+     * @param c ordinal of a commit
+     * @return message of the commit
+     */
+    public String message(int c) {
+        if (c >= _stored) {
+            return new String(_addedMessages.get(c - _stored),
+                    StandardCharsets.UTF_8);
+        }
+        long offset = _records.getLong(c * RECORD_SIZE + HASH_SIZE + 8);
+        int length = _records.getInt(c * RECORD_SIZE + HASH_SIZE + 16);
+        if (offset + length > _heapSize) {
+            throw Utils.error("Corrupt commit message heap.");
+        }
+        byte[] message = new byte[length];
+        _messages.get((int) offset, message);
+        return new String(message, StandardCharsets.UTF_8);
+    }
+
+    /** Finds the ordinal of the commit with the given ID.
+     * @param id of a commit
+     * @return ordinal of the commit, or -1 if it is not in the graph
+     */
+    public int find(String id) {
+        byte[] hash = Utils.fromHex(id);
+        int c = _index.find(hash);
+        if (c != -1) {
+            return c;
+        }
+        for (c = size() - 1; c >= _index.size(); c -= 1) {
+            if (id.equals(id(c))) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** Finds the commits whose ids start with PREFIX.
+     * @param prefix lower-case hexadecimal digits
+     * @param limit maximum number of commits returned
+     * @return ordinals of at most LIMIT such commits
+     */
+    public ArrayList<Integer> matches(String prefix, int limit) {
+        ArrayList<Integer> result = new ArrayList<>();
+        _index.matches(prefix, limit, result);
+        for (int c = _index.size(); c < size() && result.size() < limit;
+             c += 1) {
+            if (id(c).startsWith(prefix)) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /** Appends the commits added since the graph was last saved
+     * to its files. Messages are written before the records that
+     * refer to them.*/
+    public void save() {
+        int n = _addedIDs.size() - _written;
+        if (n == 0) {
+            return;
+        }
+        ByteBuffer records = ByteBuffer.allocate(n * RECORD_SIZE);
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        long offset = _heapSize;
+        for (int i = _written; i < _addedIDs.size(); i += 1) {
+            byte[] message = _addedMessages.get(i);
+            records.put(Utils.fromHex(_addedIDs.get(i)));
+            records.putLong(_addedTimes[i]);
+            records.putLong(offset);
+            records.putInt(message.length);
+            heap.write(message, 0, message.length);
+            offset += message.length;
+        }
+        Utils.appendContents(_heap, heap.toByteArray());
+        if (_file.isFile()) {
+            Utils.appendContents(_file, records.array());
+        } else {
+            Utils.writeContents(_file,
+                    new RecordOutput(MAGIC, VERSION).toByteArray(),
+                    records.array());
+        }
+        _heapSize = offset;
+        _written = _addedIDs.size();
+        if (size() - _index.size() >= INDEX_LAG) {
+            _index.update(this);
+        }
+    }
+
+    /** Kind of commit graph files.*/
+    static final String MAGIC = "GLCG";
+    /** Current version of the commit graph format.*/
+    static final int VERSION = 1;
+    /** Number of commits missing from the hash index after which
+     * it is rewritten.*/
+    static final int INDEX_LAG = 256;
+    /** Size of the file header: kind and version.*/
+    private static final int HEADER_SIZE = 5;
+    /** Size of a commit id in bytes.*/
+    private static final int HASH_SIZE = Utils.UID_LENGTH / 2;
+    /** Size of a record in bytes: id, time, message offset and
+     * message length.*/
+    private static final int RECORD_SIZE = HASH_SIZE + 8 + 8 + 4;
+
+    /** File in which the records are stored.*/
+    private final File _file;
+    /** File in which the messages are stored.*/
+    private final File _heap;
+    /** Index from ids to ordinals.*/
+    private final HashIndex _index;
+    /** Records stored in the file, or null if there are none.*/
+    private MappedByteBuffer _records;
+    /** Messages stored in the heap, or null if there are none.*/
+    private MappedByteBuffer _messages;
+    /** Number of records stored in the file.*/
+    private int _stored;
+    /** Size of the message heap, including saved added messages.*/
+    private long _heapSize;
+    /** Ids of the commits added since the graph was opened.*/
+    private ArrayList<String> _addedIDs = new ArrayList<>();
+    /** Times of the commits added since the graph was opened.*/
+    private long[] _addedTimes = new long[16];
+    /** Messages of the commits added since the graph was opened.*/
+    private ArrayList<byte[]> _addedMessages = new ArrayList<>();
+    /** Number of added commits already appended to the files.*/
+    private int _written;
+}
@@ -0,0 +1,104 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Tests of the commit graph.
+ *  @author Oumar Balde
+ */
+public class CommitGraphTest {
+
+    /** Return a commit with message MSG on top of PARENT, with its
+     *  id set as if it had been stored. */
+    private static Commit commit(Commit parent, String msg) {
+        Commit commit = new Commit(parent, msg);
+        commit.setSha1(Utils.sha1(commit.encode()));
+        return commit;
+    }
+
+    @Test
+    public void recordsSurviveReopening() throws IOException {
+        File dir = Files.createTempDirectory("graph").toFile();
+        File file = new File(dir, "commit-graph");
+        File heap = new File(dir, "commit-messages");
+        File index = new File(dir, "commit-index");
+        try {
+            Commit c0 = new Commit("initial commit");
+            c0.setSha1(Utils.sha1(c0.encode()));
+            Commit c1 = commit(c0, "caf\u00e9");
+            Commit c2 = commit(c1, "");
+            CommitGraph graph = new CommitGraph(file, heap, index);
+            graph.add(c0);
+            graph.add(c1);
+            graph.save();
+            assertEquals(2, graph.add(c2));
+            graph.save();
+            Utils.appendContents(file, new byte[] { 1, 2, 3 });
+            graph = new CommitGraph(file, heap, index);
+            assertEquals(3, graph.size());
+            assertEquals(c1.getSha1(), graph.id(1));
+            assertEquals(c1.getTimeMillis(), graph.time(1));
+            assertEquals("caf\u00e9", graph.message(1));
+            assertEquals("", graph.message(2));
+            assertEquals("initial commit", graph.message(0));
+            assertEquals(2, graph.find(c2.getSha1()));
+            assertEquals(-1, graph.find(Utils.sha1("nope")));
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void findsIdsAndPrefixesThroughTheIndex() throws IOException {
+        File dir = Files.createTempDirectory("graph").toFile();
+        try {
+            CommitGraph graph = open(dir);
+            Commit commit = new Commit("initial commit");
+            commit.setSha1(Utils.sha1(commit.encode()));
+            ArrayList<String> ids = new ArrayList<>();
+            for (int i = 0; i < 3 * CommitGraph.INDEX_LAG + 10; i += 1) {
+                graph.add(commit);
+                ids.add(commit.getSha1());
+                commit = commit(commit, "commit " + i);
+                if (i % 100 == 0) {
+                    graph.save();
+                }
+            }
+            graph.save();
+            graph = open(dir);
+            for (int c = 0; c < ids.size(); c += 1) {
+                assertEquals(c, graph.find(ids.get(c)));
+                String id = ids.get(c);
+                assertEquals(Arrays.asList(c),
+                             graph.matches(id.substring(0, 12), 2));
+            }
+            assertEquals(2, graph.matches("", 2).size());
+            int count = 0;
+            for (String id : ids) {
+                count += id.startsWith("a") ? 1 : 0;
+            }
+            assertEquals(count, graph.matches("a", ids.size()).size());
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /** Return the commit graph stored in DIR. */
+    private static CommitGraph open(File dir) {
+        return new CommitGraph(new File(dir, "commit-graph"),
+                               new File(dir, "commit-messages"),
+                               new File(dir, "commit-index"));
+    }
+}
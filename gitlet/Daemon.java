@@ -0,0 +1,270 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Server that keeps a repository resident and runs the commands
+ * forwarded to it by Main over a Unix domain socket, so that they
+ * pay neither JVM startup nor the reading of the repository's state.
+ * Commands that change the repository run one at a time; log,
+ * global-log and find run concurrently with each other. Each
+ * command's output is captured and sent back to the client, which
+ * prints it, so the output is the same as that of the one-shot
+ * command. Every change is written to disk before the reply is sent.
+ * The daemon watches the working directory, so that status and the
+ * checks of checkout and reset only look at the files changed since
+ * the previous command (see TreeWatcher).
+ * The daemon serves the repository in its working directory, and
+ * clients must run from the same directory; commands must not be
+ * run with the daemon bypassed while it is running.
+ * @author Oumar Balde
+ */
+public class Daemon {
+
+    /** Daemon constructor.
+     * @param socket file of the socket on which to listen
+     */
+    Daemon(File socket) {
+        _socket = socket;
+    }
+
+    /** Runs ARGS in the daemon listening on SOCKET, if any, and
+     * prints its output.
+     * @param socket file of the daemon's socket
+     * @param args command and operands
+     * @return false iff no daemon is listening on SOCKET
+     */
+    static boolean forward(File socket, String... args) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream out =
+                    new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                writeBytes(out, arg.getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            DataInputStream in =
+                    new DataInputStream(Channels.newInputStream(channel));
+            int status = in.readInt();
+            System.out.write(readBytes(in));
+            System.out.flush();
+            System.err.write(readBytes(in));
+            System.err.flush();
+            if (status != 0) {
+                System.exit(status);
+            }
+        }
+        return true;
+    }
+
+    /** Serves commands until a client sends "daemon stop".*/
+    public void serve() throws IOException {
+        _socket.delete();
+        _watcher = new TreeWatcher(new File("."), Main.GITLETDIR);
+        _repo = new Repo(Main.GITLETDIR);
+        _repo.setWatcher(_watcher);
+        Main.setResident(_repo);
+        prepare();
+        System.setOut(new PrintStream(new ThreadOutput(), true,
+                Charset.defaultCharset()));
+        ExecutorService workers = Executors.newCachedThreadPool();
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            _server = server;
+            server.bind(UnixDomainSocketAddress.of(_socket.toPath()));
+            while (_running) {
+                SocketChannel client = server.accept();
+                workers.execute(() -> handle(client));
+            }
+        } catch (AsynchronousCloseException excp) {
+            if (_running) {
+                throw excp;
+            }
+        } finally {
+            workers.shutdown();
+            _watcher.close();
+            _socket.delete();
+        }
+    }
+
+    /** Reads a command from CLIENT, runs it, and sends back its
+     * exit status and output.
+     * @param client connection to a client
+     */
+    private void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in =
+                    new DataInputStream(Channels.newInputStream(client));
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = new String(readBytes(in), StandardCharsets.UTF_8);
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            OUTPUT.set(output);
+            int status = run(args, new PrintStream(errors, true,
+                    Charset.defaultCharset()));
+            OUTPUT.remove();
+            DataOutputStream out =
+                    new DataOutputStream(Channels.newOutputStream(client));
+            out.writeInt(status);
+            writeBytes(out, output.toByteArray());
+            writeBytes(out, errors.toByteArray());
+            out.flush();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Runs ARGS against the resident repository, holding the lock
+     * its kind of command requires.
+     * @param args command and operands
+     * @param errors stream on which to report errors
+     * @return exit status of the command
+     */
+    private int run(String[] args, PrintStream errors) {
+        boolean read = args.length > 0 && READ_COMMANDS.contains(args[0]);
+        Lock lock = read ? _lock.readLock() : _lock.writeLock();
+        lock.lock();
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                stop(args);
+            } else {
+                Main.run(args);
+            }
+            if (!read) {
+                prepare();
+            }
+            return 0;
+        } catch (Main.ExitException excp) {
+            if (!read) {
+                reopen();
+            }
+            return 0;
+        } catch (IOException | RuntimeException excp) {
+            excp.printStackTrace(errors);
+            if (!read) {
+                reopen();
+            }
+            return 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Handles "daemon" commands sent to the running daemon.
+     * @param args command and operands
+     */
+    private void stop(String[] args) throws IOException {
+        if (args.length > 1 && args[1].equals("stop")) {
+            _running = false;
+            _server.close();
+            System.out.println("Daemon stopped.");
+        } else {
+            System.out.println("A daemon is already running.");
+        }
+    }
+
+    /** Discards the state of a command that was abandoned part way,
+     * since the one-shot command would not have saved it.*/
+    private void reopen() {
+        _repo = new Repo(Main.GITLETDIR);
+        _repo.setWatcher(_watcher);
+        Main.setResident(_repo);
+        prepare();
+    }
+
+    /** Loads every piece of state that read commands use and saves
+     * whatever loading it updated, so that read commands only read
+     * the repository and can run concurrently.*/
+    private void prepare() {
+        _repo.currBranch();
+        _repo.branches();
+        _repo.graph();
+        _repo.ancestry();
+        _repo.messages();
+        _repo.save();
+    }
+
+    /** Writes BYTES, preceded by their length, to OUT.
+     * @param out destination
+     * @param bytes to be written
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes)
+            throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads bytes written by writeBytes from IN.
+     * @param in source
+     * @return bytes read
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /** Standard output of the daemon: sends what each thread prints
+     * to the output of the command that thread is running.*/
+    private static class ThreadOutput extends OutputStream {
+        @Override
+        public void write(int b) {
+            OUTPUT.get().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            OUTPUT.get().write(b, off, len);
+        }
+    }
+
+    /** Commands that only read the repository.*/
+    private static final Set<String> READ_COMMANDS =
+            Set.of("log", "global-log", "find");
+    /** Output of the command run by the current thread.*/
+    private static final ThreadLocal<ByteArrayOutputStream> OUTPUT =
+            ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+    /** File of the socket on which the daemon listens.*/
+    private final File _socket;
+    /** Channel on which the daemon accepts connections.*/
+    private ServerSocketChannel _server;
+    /** Watcher of the working directory.*/
+    private TreeWatcher _watcher;
+    /** The resident repository.*/
+    private Repo _repo;
+    /** Lock held exclusively by commands that change the repository,
+     * and shared by the others.*/
+    private final ReentrantReadWriteLock _lock =
+            new ReentrantReadWriteLock();
+    /** False once the daemon has been asked to stop.*/
+    private volatile boolean _running = true;
+}
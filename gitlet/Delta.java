@@ -0,0 +1,282 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Deltas between two versions of an object, as stored in packs. A
+ * delta is a record listing the operations that rebuild the target
+ * from the base: copies of ranges of the base and insertions of new
+ * bytes. Text is compared line by line with Diff, so that unchanged
+ * lines become copies; other contents are compared with a rolling
+ * hash of fixed-size blocks of the base, so that any run of bytes
+ * shared with the base at least a block long becomes a copy.
+ * @author Oumar Balde
+ */
+public class Delta {
+
+    /** Delta constructor. Starts a delta producing TARGET.
+     * @param target contents rebuilt by the delta
+     */
+    private Delta(byte[] target) {
+        _target = target;
+        _out.writeVarInt(target.length);
+    }
+
+    /** Computes a delta from BASE to TARGET.
+     * @param base contents of the base
+     * @param target contents to be rebuilt from BASE
+     * @return encoded delta
+     */
+    static byte[] encode(byte[] base, byte[] target) {
+        Delta delta = new Delta(target);
+        if (isText(base) && isText(target)) {
+            delta.encodeLines(base);
+        } else {
+            delta.encodeBlocks(base);
+        }
+        delta.flushCopy();
+        return delta._out.toByteArray();
+    }
+
+    /** Rebuilds the target of DELTA from BASE.
+     * @param base contents of the base
+     * @param delta produced by encode(BASE, target)
+     * @return contents of the target
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        RecordInput in = new RecordInput(delta, MAGIC);
+        if (in.version() != VERSION) {
+            throw Utils.error("Unsupported delta version %d.", in.version());
+        }
+        byte[] target = new byte[in.readVarInt()];
+        int pos = 0;
+        while (pos < target.length) {
+            long op = in.readVarLong();
+            long len = op >>> 1;
+            if (len == 0 || len > target.length - pos) {
+                throw Utils.error("Corrupt delta.");
+            }
+            if ((op & 1) != 0) {
+                int off = in.readVarInt();
+                if (off < 0 || off > base.length - len) {
+                    throw Utils.error("Corrupt delta.");
+                }
+                System.arraycopy(base, off, target, pos, (int) len);
+            } else {
+                in.readBytes(target, pos, (int) len);
+            }
+            pos += len;
+        }
+        return target;
+    }
+
+    /** Checks whether CONTENTS look like text: they contain no NUL
+     * byte.
+     * @param contents bytes of an object
+     * @return true iff CONTENTS are compared line by line
+     */
+    private static boolean isText(byte[] contents) {
+        for (byte b : contents) {
+            if (b == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Encodes the target as the lines it shares with BASE, found by
+     * Diff, and the lines it adds.
+     * @param base contents of the base
+     */
+    private void encodeLines(byte[] base) {
+        int[] starts1 = lineStarts(base);
+        int[] starts2 = lineStarts(_target);
+        Diff diff = new Diff();
+        diff.setSequences(lines(base, starts1), lines(_target, starts2));
+        int[] edits = diff.diffs();
+        int k1 = 0;
+        for (int e = 0; e < edits.length; e += 4) {
+            copy(starts1[k1], starts1[edits[e]] - starts1[k1]);
+            k1 = edits[e] + edits[e + 1];
+            int from = starts2[edits[e + 2]];
+            insert(from, starts2[edits[e + 2] + edits[e + 3]] - from);
+        }
+        copy(starts1[k1], base.length - starts1[k1]);
+    }
+
+    /** Encodes the target as the blocks of BASE it contains, each
+     * extended as far as both contents agree, and the bytes between
+     * them.
+     * @param base contents of the base
+     */
+    private void encodeBlocks(byte[] base) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int off = 0; off + BLOCK <= base.length; off += BLOCK) {
+            blocks.putIfAbsent(hash(base, off), off);
+        }
+        int n = _target.length;
+        int literal = 0;
+        int i = 0;
+        int h = n >= BLOCK ? hash(_target, 0) : 0;
+        while (i + BLOCK <= n) {
+            Integer off = blocks.get(h);
+            if (off != null && matches(base, off, i)) {
+                int start = off, from = i;
+                while (start > 0 && from > literal
+                       && base[start - 1] == _target[from - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = off + BLOCK, to = i + BLOCK;
+                while (end < base.length && to < n
+                       && base[end] == _target[to]) {
+                    end += 1;
+                    to += 1;
+                }
+                insert(literal, from - literal);
+                copy(start, to - from);
+                literal = i = to;
+                if (i + BLOCK <= n) {
+                    h = hash(_target, i);
+                }
+            } else {
+                if (i + BLOCK < n) {
+                    h = (h - (_target[i] & 0xFF) * POWER) * BASE
+                        + (_target[i + BLOCK] & 0xFF);
+                }
+                i += 1;
+            }
+        }
+        insert(literal, n - literal);
+    }
+
+    /** Checks whether the block of BASE at OFF is the block of the
+     * target at POS.
+     * @param base contents of the base
+     * @param off position of the block in BASE
+     * @param pos position of the block in the target
+     * @return true iff the blocks are equal
+     */
+    private boolean matches(byte[] base, int off, int pos) {
+        for (int j = 0; j < BLOCK; j += 1) {
+            if (base[off + j] != _target[pos + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Adds a copy of LEN bytes of the base, starting at OFF, merging
+     * it with the previous copy if they are contiguous.
+     * @param off position in the base
+     * @param len number of bytes
+     */
+    private void copy(int off, int len) {
+        if (len == 0) {
+            return;
+        } else if (_copyLength > 0 && _copyStart + _copyLength == off) {
+            _copyLength += len;
+            return;
+        }
+        flushCopy();
+        _copyStart = off;
+        _copyLength = len;
+    }
+
+    /** Adds an insertion of LEN bytes of the target, starting at FROM.
+     * @param from position in the target
+     * @param len number of bytes
+     */
+    private void insert(int from, int len) {
+        if (len == 0) {
+            return;
+        }
+        flushCopy();
+        _out.writeVarLong((long) len << 1);
+        _out.writeBytes(_target, from, len);
+    }
+
+    /** Writes the pending copy, if any.*/
+    private void flushCopy() {
+        if (_copyLength > 0) {
+            _out.writeVarLong(((long) _copyLength << 1) | 1);
+            _out.writeVarInt(_copyStart);
+            _copyLength = 0;
+        }
+    }
+
+    /** Gets the positions at which the lines of CONTENTS start, followed
+     * by the length of CONTENTS. Every line but the last ends with a
+     * newline.
+     * @param contents bytes of an object
+     * @return start of each line, and the end of the last
+     */
+    private static int[] lineStarts(byte[] contents) {
+        ArrayList<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < contents.length; i += 1) {
+            if (contents[i] == '\n' && i + 1 < contents.length) {
+                starts.add(i + 1);
+            }
+        }
+        int n = contents.length == 0 ? 0 : starts.size();
+        int[] result = new int[n + 1];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = starts.get(k);
+        }
+        result[n] = contents.length;
+        return result;
+    }
+
+    /** Gets the lines of CONTENTS, terminators included, as strings
+     * with one character per byte.
+     * @param contents bytes of an object
+     * @param starts as returned by lineStarts(CONTENTS)
+     * @return the lines
+     */
+    private static ArrayList<String> lines(byte[] contents, int[] starts) {
+        ArrayList<String> lines = new ArrayList<>();
+        for (int k = 0; k + 1 < starts.length; k += 1) {
+            lines.add(new String(contents, starts[k],
+                    starts[k + 1] - starts[k], StandardCharsets.ISO_8859_1));
+        }
+        return lines;
+    }
+
+    /** Computes the hash of the block of CONTENTS at OFF.
+     * @param contents bytes of an object
+     * @param off position of the block
+     * @return hash of the block
+     */
+    private static int hash(byte[] contents, int off) {
+        int h = 0;
+        for (int j = 0; j < BLOCK; j += 1) {
+            h = h * BASE + (contents[off + j] & 0xFF);
+        }
+        return h;
+    }
+
+    /** Kind of delta records.*/
+    static final String MAGIC = "GLDL";
+    /** Current version of the delta format.*/
+    static final int VERSION = 1;
+    /** Size of the blocks of the base found by the rolling hash.*/
+    static final int BLOCK = 16;
+    /** Multiplier of the rolling hash.*/
+    private static final int BASE = 257;
+    /** BASE to the power BLOCK - 1, modulo 2^32: the weight of the
+     * first byte of a block in its hash.*/
+    private static final int POWER = hash(new byte[] {
+        1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 }, 0);
+
+    /** Contents rebuilt by the delta.*/
+    private final byte[] _target;
+    /** The delta written so far.*/
+    private final RecordOutput _out = new RecordOutput(MAGIC, VERSION);
+    /** Start in the base of the copy not written yet.*/
+    private int _copyStart;
+    /** Length of the copy not written yet, or 0 if there is none.*/
+    private int _copyLength;
+}
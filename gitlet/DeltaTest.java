@@ -0,0 +1,65 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+/** Tests of deltas between versions of an object.
+ *  @author Oumar Balde
+ */
+public class DeltaTest {
+
+    /** Checks that the delta from BASE to TARGET rebuilds TARGET,
+     *  and returns its size. */
+    private static int roundTrip(byte[] base, byte[] target) {
+        byte[] delta = Delta.encode(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        return delta.length;
+    }
+
+    private static int roundTrip(String base, String target) {
+        return roundTrip(base.getBytes(), target.getBytes());
+    }
+
+    @Test
+    public void textDeltas() {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            lines.append("line number ").append(i).append("\n");
+        }
+        String base = lines.toString();
+        String edited = base.replace("line number 50\n", "changed\n")
+            .replace("line number 120\n", "") + "appended";
+        assertTrue(roundTrip(base, edited) < 64);
+        roundTrip(base, base);
+        roundTrip("", base);
+        roundTrip(base, "");
+        roundTrip("", "");
+        roundTrip("a\r\nb\r\nc", "a\r\nB\r\nc\r\n");
+        roundTrip("no newline", "no newline\n");
+        roundTrip("caf\u00e9\n", "th\u00e9\ncaf\u00e9\n");
+    }
+
+    @Test
+    public void binaryDeltas() {
+        Random random = new Random(42);
+        byte[] base = new byte[1 << 16];
+        random.nextBytes(base);
+        base[0] = 0;
+        byte[] target = new byte[base.length + 100];
+        System.arraycopy(base, 0, target, 0, 30000);
+        random.nextBytes(target);
+        System.arraycopy(base, 0, target, 0, 30000);
+        System.arraycopy(base, 30000, target, 30100, base.length - 30000);
+        target[50000] ^= 1;
+        assertTrue(roundTrip(base, target) < 300);
+        roundTrip(base, base);
+        roundTrip(new byte[] { 0 }, base);
+        roundTrip(base, new byte[] { 0, 1, 2 });
+        byte[] noise = new byte[1000];
+        random.nextBytes(noise);
+        noise[0] = 0;
+        roundTrip(base, noise);
+    }
+}
@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
@@ -18,10 +19,36 @@ import static java.lang.Math.max;
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  Before comparing, each distinct line is interned to a small int so
+ *  that the algorithms compare ints rather than strings.  Common
+ *  subsequences are computed either from a memo table of prefix lengths
+ *  (quadratic time and space), with Myers' O((N+M)D) algorithm in its
+ *  linear-space, divide-and-conquer form, or with a histogram diff, which
+ *  anchors on the rarest common lines and so tends to produce more natural
+ *  hunks on source code.  By default the table is used for small inputs and
+ *  Myers' algorithm otherwise.
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** The algorithms used to compute common subsequences. */
+    public enum Algorithm {
+        /** LCS table for small inputs, MYERS otherwise. */
+        AUTO,
+        /** Memo table of longest common subsequences of prefixes. */
+        LCS,
+        /** Myers' O((N+M)D) algorithm, using linear space. */
+        MYERS,
+        /** Histogram diff: recursively anchor on the longest common run
+         *  containing the lines occurring least often in the first
+         *  sequence, falling back to MYERS where all lines are common. */
+        HISTOGRAM
+    }
+
+    /** Use ALGORITHM to compute common subsequences from now on. */
+    public void setAlgorithm(Algorithm algorithm) {
+        _algorithm = algorithm;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
@@ -29,6 +56,7 @@ public class Diff {
         _lines2 = new ArrayList<>(seq2);
         _lls = null;
         _todo = null;
+        _ids1 = _ids2 = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -50,6 +78,7 @@ public class Diff {
         }
         _lls = null;
         _todo = null;
+        _ids1 = _ids2 = null;
     }
 
     /** Return the first of the current sequences. */
@@ -76,6 +105,7 @@ public class Diff {
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
+        intern();
         if (_lls == null) {
             _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
             for (int[] row : _lls) {
@@ -97,8 +127,7 @@ public class Diff {
                 } else {
                     switch (_llsState) {
                     case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
+                        if (_ids1[_llsTop1 - 1] == _ids2[_llsTop2 - 1]) {
                             push(_llsTop1, _llsTop2, 4);
                             push(_llsTop1 - 1, _llsTop2 - 1, 0);
                         } else {
@@ -142,10 +171,7 @@ public class Diff {
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return _lines1.equals(_lines2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -166,6 +192,12 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
+        checkData();
+        intern();
+        Algorithm algorithm = chosenAlgorithm();
+        if (algorithm != Algorithm.LCS) {
+            return linearSubsequence(algorithm);
+        }
         ArrayDeque<Integer> resultList = new ArrayDeque<>();
 
         int k1, k2;
@@ -224,6 +256,279 @@ public class Diff {
         return toIntArr(result);
     }
 
+    /** Assign each distinct line of the current sequences an int, so
+     *  that line I of the first sequence equals line J of the second iff
+     *  _ids1[I] == _ids2[J]. */
+    private void intern() {
+        if (_ids1 != null) {
+            return;
+        }
+        HashMap<String, Integer> ids = new HashMap<>();
+        _ids1 = new int[_lines1.size()];
+        _ids2 = new int[_lines2.size()];
+        for (int i = 0; i < _ids1.length; i += 1) {
+            _ids1[i] = ids.computeIfAbsent(_lines1.get(i), k -> ids.size());
+        }
+        for (int i = 0; i < _ids2.length; i += 1) {
+            _ids2[i] = ids.computeIfAbsent(_lines2.get(i), k -> ids.size());
+        }
+        _nids = ids.size();
+    }
+
+    /** Return the algorithm commonSubsequence uses for the current
+     *  sequences. */
+    private Algorithm chosenAlgorithm() {
+        if (_algorithm != Algorithm.AUTO) {
+            return _algorithm;
+        } else if ((long) (_lines1.size() + 1) * (_lines2.size() + 1)
+                   > AUTO_TABLE_LIMIT) {
+            return Algorithm.MYERS;
+        } else {
+            return Algorithm.LCS;
+        }
+    }
+
+    /** Return the result of commonSubsequence(), computed with
+     *  ALGORITHM, which is MYERS or HISTOGRAM. */
+    private int[] linearSubsequence(Algorithm algorithm) {
+        int n1 = _lines1.size(), n2 = _lines2.size();
+        _voff = (n1 + n2) / 2 + 2;
+        _forward = new int[n1 + n2 + 5];
+        _backward = new int[n1 + n2 + 5];
+        _runs = new int[48];
+        _nruns = 0;
+        if (algorithm == Algorithm.HISTOGRAM) {
+            histogram(n1, n2);
+        } else {
+            myers(0, n1, 0, n2);
+        }
+        _forward = _backward = null;
+        return Arrays.copyOf(_runs, _nruns);
+    }
+
+    /** Return the number of equal lines at the start of lines
+     *  [A0 .. A1 - 1] of the first sequence and [B0 .. B1 - 1] of the
+     *  second. */
+    private int commonPrefix(int a0, int a1, int b0, int b1) {
+        int n;
+        n = 0;
+        while (a0 + n < a1 && b0 + n < b1 && equal(a0 + n, b0 + n)) {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Return the number of equal lines at the end of lines
+     *  [A0 .. A1 - 1] of the first sequence and [B0 .. B1 - 1] of the
+     *  second. */
+    private int commonSuffix(int a0, int a1, int b0, int b1) {
+        int n;
+        n = 0;
+        while (a1 - n > a0 && b1 - n > b0
+               && equal(a1 - n - 1, b1 - n - 1)) {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Append to the current runs the common runs found by a histogram
+     *  diff of the first N1 lines of the first sequence and the first N2
+     *  of the second.  Regions still to be compared, and runs still to
+     *  be appended, are kept on an explicit stack (pushed in reverse
+     *  order), since the number of nested splits may be as large as the
+     *  number of lines. */
+    private void histogram(int n1, int n2) {
+        int[] head = new int[_nids];
+        int[] count = new int[_nids];
+        int[] next = new int[n1];
+        Arrays.fill(head, -1);
+        ArrayDeque<int[]> work = new ArrayDeque<>();
+        work.push(new int[] { 0, n1, 0, n2 });
+        while (!work.isEmpty()) {
+            int[] task = work.pop();
+            if (task.length == 3) {
+                addRun(task[0], task[1], task[2]);
+                continue;
+            }
+            int a0 = task[0], a1 = task[1], b0 = task[2], b1 = task[3];
+            int pre = commonPrefix(a0, a1, b0, b1);
+            addRun(a0, b0, pre);
+            a0 += pre; b0 += pre;
+            int suf = commonSuffix(a0, a1, b0, b1);
+            a1 -= suf; b1 -= suf;
+            work.push(new int[] { a1, b1, suf });
+            if (a0 == a1 || b0 == b1) {
+                continue;
+            }
+            for (int i = a1 - 1; i >= a0; i -= 1) {
+                next[i] = head[_ids1[i]];
+                head[_ids1[i]] = i;
+                count[_ids1[i]] += 1;
+            }
+            int[] best = rarestRun(a0, a1, b0, b1, head, count, next);
+            for (int i = a0; i < a1; i += 1) {
+                head[_ids1[i]] = -1;
+                count[_ids1[i]] = 0;
+            }
+            if (best == null) {
+                myers(a0, a1, b0, b1);
+            } else {
+                int len = best[2];
+                work.push(new int[] { best[0] + len, a1, best[1] + len, b1 });
+                work.push(best);
+                work.push(new int[] { a0, best[0], b0, best[1] });
+            }
+        }
+    }
+
+    /** Return the common run of lines [A0 .. A1 - 1] of the first
+     *  sequence and [B0 .. B1 - 1] of the second whose rarest line occurs
+     *  least often in the first range, preferring longer runs among
+     *  those, as {s1, s2, length}; or null if every common line occurs
+     *  more than MAX_CHAIN times.  HEAD, COUNT and NEXT index the first
+     *  range: HEAD[id] is the first position of line id, NEXT[i] the next
+     *  position after i of the same line (or -1), and COUNT[id] the
+     *  number of occurrences of line id. */
+    private int[] rarestRun(int a0, int a1, int b0, int b1,
+                            int[] head, int[] count, int[] next) {
+        int[] best = null;
+        int bestCount = MAX_CHAIN + 1;
+        for (int bi = b0; bi < b1;) {
+            int c = count[_ids2[bi]];
+            int nextB = bi + 1;
+            if (c == 0 || c > MAX_CHAIN || c > bestCount) {
+                bi = nextB;
+                continue;
+            }
+            for (int ai = head[_ids2[bi]]; ai != -1; ai = next[ai]) {
+                int as = ai, bs = bi, ae = ai + 1, be = bi + 1;
+                int low = c;
+                while (as > a0 && bs > b0 && equal(as - 1, bs - 1)) {
+                    as -= 1; bs -= 1;
+                    low = Math.min(low, count[_ids1[as]]);
+                }
+                while (ae < a1 && be < b1 && equal(ae, be)) {
+                    low = Math.min(low, count[_ids1[ae]]);
+                    ae += 1; be += 1;
+                }
+                if (low < bestCount
+                    || (best != null && low == bestCount
+                        && ae - as > best[2])) {
+                    best = new int[] { as, bs, ae - as };
+                    bestCount = low;
+                }
+                nextB = Math.max(nextB, be);
+            }
+            bi = nextB;
+        }
+        return best;
+    }
+
+    /** Append to the current runs a longest common subsequence of lines
+     *  [A0 .. A1 - 1] of the first sequence and lines [B0 .. B1 - 1] of
+     *  the second.  Common prefixes and suffixes are peeled off first, so
+     *  that the middle snake found for what remains never touches a
+     *  corner and both recursive subproblems are strictly smaller. */
+    private void myers(int a0, int a1, int b0, int b1) {
+        int pre = commonPrefix(a0, a1, b0, b1);
+        addRun(a0, b0, pre);
+        a0 += pre; b0 += pre;
+        int suf = commonSuffix(a0, a1, b0, b1);
+        a1 -= suf; b1 -= suf;
+        if (a0 < a1 && b0 < b1) {
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            myers(a0, snake[0], b0, snake[1]);
+            addRun(snake[0], snake[1], snake[2] - snake[0]);
+            myers(snake[2], a1, snake[3], b1);
+        }
+        addRun(a1, b1, suf);
+    }
+
+    /** Return the middle snake of an optimal edit path from lines
+     *  [A0 .. A1 - 1] of the first sequence to lines [B0 .. B1 - 1] of the
+     *  second, as {x0, y0, x1, y1}: the snake runs diagonally from line x0
+     *  of the first sequence and y0 of the second to x1 and y1.  Searches
+     *  forward from the start and backward from the end at the same time,
+     *  keeping only the furthest point reached on each diagonal. */
+    private int[] middleSnake(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int off = _voff;
+        int[] vf = _forward, vb = _backward;
+        vf[off + 1] = 0;
+        vb[off + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && equal(a0 + x, b0 + y)) {
+                    x += 1; y += 1;
+                }
+                vf[off + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1
+                    && x + vb[off + kb] >= n) {
+                    return new int[] { a0 + x0, b0 + y0, a0 + x, b0 + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vb[off + k - 1] < vb[off + k + 1])) {
+                    x = vb[off + k + 1];
+                } else {
+                    x = vb[off + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                       && equal(a1 - x - 1, b1 - y - 1)) {
+                    x += 1; y += 1;
+                }
+                vb[off + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d
+                    && x + vf[off + kf] >= n) {
+                    return new int[] { a1 - x, b1 - y, a1 - x0, b1 - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Return true iff line I1 of the first sequence equals line I2 of
+     *  the second. */
+    private boolean equal(int i1, int i2) {
+        return _ids1[i1] == _ids2[i2];
+    }
+
+    /** Append the common run of LEN lines starting at line S1 of the
+     *  first sequence and S2 of the second to the runs computed so far,
+     *  merging it with the previous run when they are contiguous. */
+    private void addRun(int s1, int s2, int len) {
+        if (len == 0) {
+            return;
+        }
+        if (_nruns > 0 && _runs[_nruns - 3] + _runs[_nruns - 1] == s1
+            && _runs[_nruns - 2] + _runs[_nruns - 1] == s2) {
+            _runs[_nruns - 1] += len;
+            return;
+        }
+        if (_nruns + 3 > _runs.length) {
+            _runs = Arrays.copyOf(_runs, 2 * _runs.length);
+        }
+        _runs[_nruns] = s1;
+        _runs[_nruns + 1] = s2;
+        _runs[_nruns + 2] = len;
+        _nruns += 3;
+    }
+
     /** Raise an exception if there are no current data sequences for
      *  comparison. */
     private void checkData() {
@@ -260,6 +565,34 @@ public class Diff {
         return _todop <= 0;
     }
 
+    /** Inputs with more LCS table entries than this are compared with
+     *  Myers' algorithm when the algorithm is AUTO. */
+    static final long AUTO_TABLE_LIMIT = 1 << 20;
+
+    /** Lines occurring more often than this in a region are not used
+     *  as anchors by the histogram diff. */
+    static final int MAX_CHAIN = 64;
+
+    /** The algorithm used by commonSubsequence. */
+    private Algorithm _algorithm = Algorithm.AUTO;
+
+    /** Furthest reaching points of the forward and backward searches of
+     *  middleSnake, indexed by diagonal. */
+    private int[] _forward, _backward;
+    /** Index of diagonal 0 in _forward and _backward. */
+    private int _voff;
+    /** Common runs found so far by myers, as in commonSubsequence(), and
+     *  the number of values in use. */
+    private int[] _runs;
+    /** Number of values of _runs in use. */
+    private int _nruns;
+
+    /** The interned lines of the sequences being compared, or null if
+     *  not computed yet. */
+    private int[] _ids1, _ids2;
+    /** Number of distinct lines in the sequences being compared. */
+    private int _nids;
+
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
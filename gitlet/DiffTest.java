@@ -0,0 +1,113 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Tests of Diff.
+ *  @author Oumar Balde
+ */
+public class DiffTest {
+
+    /** Check that COMMON, as returned by commonSubsequence, describes
+     *  increasing runs of equal lines of D's sequences, and return its
+     *  total length. */
+    private static int checkRuns(Diff d, int[] common) {
+        assertEquals(0, common.length % 3);
+        int e1, e2, total;
+        e1 = e2 = total = 0;
+        for (int k = 0; k < common.length; k += 3) {
+            assertTrue(common[k] >= e1 && common[k + 1] >= e2);
+            assertTrue(common[k + 2] > 0);
+            for (int i = 0; i < common[k + 2]; i += 1) {
+                assertEquals(d.get1(common[k] + i), d.get2(common[k + 1] + i));
+            }
+            e1 = common[k] + common[k + 2];
+            e2 = common[k + 1] + common[k + 2];
+            total += common[k + 2];
+        }
+        assertTrue(e1 <= d.sequence1().size() && e2 <= d.sequence2().size());
+        return total;
+    }
+
+    /** Return a random sequence of N lines drawn from an alphabet of
+     *  K lines. */
+    private static List<String> randomLines(Random r, int n, int k) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            result.add("line " + r.nextInt(k));
+        }
+        return result;
+    }
+
+    @Test
+    public void myersMatchesTable() {
+        Random r = new Random(61);
+        for (int trial = 0; trial < 300; trial += 1) {
+            List<String> a = randomLines(r, r.nextInt(30), 1 + r.nextInt(6));
+            List<String> b = randomLines(r, r.nextInt(30), 1 + r.nextInt(6));
+            Diff d = new Diff();
+            d.setSequences(a, b);
+            d.setAlgorithm(Diff.Algorithm.LCS);
+            int expected = d.lls();
+            d.setAlgorithm(Diff.Algorithm.MYERS);
+            assertEquals(expected, checkRuns(d, d.commonSubsequence()));
+            assertEquals(a.equals(b), d.sequencesEqual());
+        }
+    }
+
+    @Test
+    public void histogramRunsAreCommon() {
+        Random r = new Random(3);
+        for (int trial = 0; trial < 300; trial += 1) {
+            List<String> a = randomLines(r, r.nextInt(40), 1 + r.nextInt(20));
+            List<String> b = randomLines(r, r.nextInt(40), 1 + r.nextInt(20));
+            Diff d = new Diff();
+            d.setSequences(a, b);
+            d.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+            int len = checkRuns(d, d.commonSubsequence());
+            assertTrue(len <= d.lls());
+            if (a.equals(b)) {
+                assertEquals(a.size(), len);
+            }
+        }
+    }
+
+    @Test
+    public void histogramAnchorsOnUniqueLines() {
+        Diff d = new Diff();
+        d.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        d.setSequences(Arrays.asList("}", "f() {", "x", "}", "g() {", "}"),
+                       Arrays.asList("g() {", "}", "f() {", "x", "}"));
+        assertArrayEquals(new int[] { 0, 1, 3, 5, 4, 1 },
+                          d.commonSubsequence());
+    }
+
+    @Test
+    public void myersDiffs() {
+        Diff d = new Diff();
+        d.setAlgorithm(Diff.Algorithm.MYERS);
+        d.setSequences(Arrays.asList("a", "b", "c", "d"),
+                       Arrays.asList("a", "x", "c", "d", "e"));
+        assertArrayEquals(new int[] { 0, 0, 1, 2, 2, 2 },
+                          d.commonSubsequence());
+        assertArrayEquals(new int[] { 1, 1, 1, 1, 4, 0, 4, 1 }, d.diffs());
+    }
+
+    @Test
+    public void largeInputsUseLinearSpace() {
+        ArrayList<String> a = new ArrayList<>(), b = new ArrayList<>();
+        for (int i = 0; i < 200000; i += 1) {
+            a.add("line " + i);
+            b.add(i % 1000 == 0 ? "changed " + i : "line " + i);
+        }
+        Diff d = new Diff();
+        d.setSequences(a, b);
+        assertEquals(a.size() - 200, checkRuns(d, d.commonSubsequence()));
+        assertEquals(200 * 4, d.diffs().length);
+    }
+}
@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent index from commit ids to ordinals, laid out like a pack
+ * index: a fan-out table giving, for each possible first byte, the
+ * number of ids that start with a byte no larger than it, followed by
+ * the ids in sorted order and their ordinals. A lookup binary-searches
+ * the slice of ids selected by the fan-out table, so neither exact
+ * ids nor abbreviated ones require reading every commit id.
+ * The index covers a prefix of the commit graph's ordinals; commits
+ * added since it was written are searched directly in the graph, and
+ * the index is rewritten once there are enough of them.
+ * @author Oumar Balde
+ */
+public class HashIndex {
+
+    /** HashIndex constructor. Maps the index stored in FILE, if any.
+     * @param file in which the index is stored
+     */
+    HashIndex(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] header = new byte[HEADER_SIZE];
+            raf.readFully(header);
+            RecordInput in = new RecordInput(header, MAGIC);
+            if (in.version() != VERSION) {
+                throw Utils.error("Unsupported hash index version %d.",
+                        in.version());
+            }
+            _table = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, raf.length() - HEADER_SIZE);
+            _size = _table.getInt(4 * (FANOUT - 1));
+            if (_table.capacity() != 4 * FANOUT + _size * ENTRY_SIZE) {
+                throw Utils.error("Corrupt hash index.");
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Accessor method that gets the number of indexed commits,
+     * which are those with ordinals 0 .. size() - 1.
+     * @return number of commits
+     */
+    public int size() {
+        return _size;
+    }
+
+    /** Finds the ordinal of the commit with the given HASH.
+     * @param hash id of a commit, as bytes
+     * @return ordinal of the commit, or -1 if it is not indexed
+     */
+    public int find(byte[] hash) {
+        int k = lowerBound(hash);
+        if (k < _size && compare(k, hash) == 0) {
+            return ordinal(k);
+        }
+        return -1;
+    }
+
+    /** Adds to RESULT the ordinals of the indexed commits whose
+     * ids start with PREFIX, stopping once RESULT has LIMIT
+     * elements.
+     * @param prefix lower-case hexadecimal digits
+     * @param limit maximum size of RESULT
+     * @param result list to which the ordinals are added
+     */
+    public void matches(String prefix, int limit, List<Integer> result) {
+        char[] padded = new char[Utils.UID_LENGTH];
+        Arrays.fill(padded, '0');
+        prefix.getChars(0, prefix.length(), padded, 0);
+        byte[] low = Utils.fromHex(new String(padded));
+        byte[] hash = new byte[HASH_SIZE];
+        for (int k = lowerBound(low); k < _size && result.size() < limit;
+             k += 1) {
+            _table.get(hashOffset(k), hash);
+            if (!Utils.toHex(hash).startsWith(prefix)) {
+                break;
+            }
+            result.add(ordinal(k));
+        }
+    }
+
+    /** Rewrites the index so that it covers every commit of GRAPH,
+     * merging the ids already indexed with those added since.
+     * @param graph commit graph indexed by this
+     */
+    public void update(CommitGraph graph) {
+        int added = graph.size() - _size;
+        if (added <= 0) {
+            return;
+        }
+        byte[][] hashes = new byte[added][];
+        Integer[] order = new Integer[added];
+        for (int i = 0; i < added; i += 1) {
+            hashes[i] = Utils.fromHex(graph.id(_size + i));
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Arrays.compareUnsigned(hashes[i],
+                hashes[j]));
+        int n = _size + added;
+        ByteBuffer out = ByteBuffer.allocate(4 * FANOUT + n * ENTRY_SIZE);
+        int[] fanout = new int[FANOUT];
+        byte[] hash = new byte[HASH_SIZE];
+        int k = 0, a = 0;
+        for (int e = 0; e < n; e += 1) {
+            int ordinal;
+            if (a == added || k < _size
+                    && compare(k, hashes[order[a]]) < 0) {
+                _table.get(hashOffset(k), hash);
+                ordinal = ordinal(k);
+                k += 1;
+            } else {
+                hash = hashes[order[a]];
+                ordinal = _size + order[a];
+                a += 1;
+            }
+            fanout[hash[0] & 0xFF] += 1;
+            out.put(4 * FANOUT + e * HASH_SIZE, hash);
+            out.putInt(4 * FANOUT + n * HASH_SIZE + 4 * e, ordinal);
+            hash = new byte[HASH_SIZE];
+        }
+        for (int b = 0; b < FANOUT; b += 1) {
+            out.putInt(4 * b, (b == 0 ? 0 : out.getInt(4 * (b - 1)))
+                    + fanout[b]);
+        }
+        Utils.writeContentsAtomically(_file,
+                new RecordOutput(MAGIC, VERSION).toByteArray(), out.array());
+        _table = out;
+        _size = n;
+    }
+
+    /** Finds the first indexed id that is not less than HASH,
+     * searching only the ids with the same first byte.
+     * @param hash id of a commit, as bytes
+     * @return position of the id in the sorted table
+     */
+    private int lowerBound(byte[] hash) {
+        if (_size == 0) {
+            return 0;
+        }
+        int b = hash[0] & 0xFF;
+        int lo = b == 0 ? 0 : _table.getInt(4 * (b - 1));
+        int hi = _table.getInt(4 * b);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, hash) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compares the K-th indexed id with HASH.
+     * @param k position in the sorted table
+     * @param hash id of a commit, as bytes
+     * @return negative, zero or positive as the id is less than,
+     *         equal to or greater than HASH
+     */
+    private int compare(int k, byte[] hash) {
+        int offset = hashOffset(k);
+        for (int i = 0; i < HASH_SIZE; i += 1) {
+            int c = Integer.compare(_table.get(offset + i) & 0xFF,
+                    hash[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Gets the ordinal of the K-th indexed id.
+     * @param k position in the sorted table
+     * @return ordinal of the commit
+     */
+    private int ordinal(int k) {
+        return _table.getInt(4 * FANOUT + _size * HASH_SIZE + 4 * k);
+    }
+
+    /** Gets the position of the K-th indexed id in the table.
+     * @param k position in the sorted table
+     * @return offset of the id
+     */
+    private int hashOffset(int k) {
+        return 4 * FANOUT + k * HASH_SIZE;
+    }
+
+    /** Kind of hash index files.*/
+    static final String MAGIC = "GLHI";
+    /** Current version of the hash index format.*/
+    static final int VERSION = 1;
+    /** Size of the file header: kind and version.*/
+    private static final int HEADER_SIZE = 5;
+    /** Number of entries of the fan-out table.*/
+    private static final int FANOUT = 256;
+    /** Size of a commit id in bytes.*/
+    private static final int HASH_SIZE = Utils.UID_LENGTH / 2;
+    /** Size of the id and ordinal of one commit.*/
+    private static final int ENTRY_SIZE = HASH_SIZE + 4;
+
+    /** File in which the index is stored.*/
+    private final File _file;
+    /** Fan-out table, sorted ids and ordinals, or null if there is
+     * no index yet.*/
+    private ByteBuffer _table;
+    /** Number of indexed commits.*/
+    private int _size;
+}
@@ -1,7 +1,13 @@
 package gitlet;
 
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Driver class for Gitlet, the tiny stupid version-control system.
@@ -16,9 +22,22 @@ public class Main {
      * <COMMAND> <OPERAND> ....
      */
     public static void main(String... args) throws IOException {
+        if (args.length > 0 && !args[0].equals("batch")
+                && DAEMON_SOCKET.exists()
+                && Daemon.forward(DAEMON_SOCKET, args)) {
+            return;
+        }
+        run(args);
+    }
+
+    /**
+     * Runs the command ARGS in this process.
+     * @param args command and operands
+     */
+    static void run(String... args) throws IOException {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
-            System.exit(0);
+            exit();
         }
         String command = args[0];
         switch (command) {
@@ -26,29 +45,30 @@ public class Main {
             if (GITLETDIR.exists()) {
                 System.out.println("A Gitlet version-control system "
                         + "already exists in the current directory.");
-                System.exit(0);
+                exit();
             }
             init();
             break;
         case "add":
             if (args.length < 2) {
                 System.out.println("Missing file name");
-                System.exit(0);
+                exit();
             }
-            File fileToAdd = new File(args[1]);
-            if (!fileToAdd.exists()) {
-                System.out.println("File does not exist.");
-                System.exit(0);
+            for (int i = 1; i < args.length; i += 1) {
+                if (!new File(args[i]).exists()) {
+                    System.out.println("File does not exist.");
+                    exit();
+                }
             }
-            add(args[1]);
+            add(Arrays.asList(args).subList(1, args.length));
             break;
         case "commit":
             if (args.length < 2) {
                 System.out.println("Please enter a commit message.");
-                System.exit(0);
+                exit();
             } else if (args[1].equals("")) {
                 System.out.println("Please enter a commit message.");
-                System.exit(0);
+                exit();
             }
             String message = args[1];
             commit(message);
@@ -66,6 +86,7 @@ public class Main {
     public static void mainHelper(String... args) throws IOException {
         switch (args[0]) {
         case "rm":
+            confirmArgs(args);
             remove(args[1]);
             break;
         case "log":
@@ -76,7 +97,7 @@ public class Main {
             break;
         case "find":
             confirmArgs(args);
-            find(args[1]);
+            find(args);
             break;
         case "status":
             status(args);
@@ -101,9 +122,99 @@ public class Main {
             confirmArgs(args);
             merge(args[1]);
             break;
+        case "repack":
+            repack();
+            break;
+        case "daemon":
+            daemon(args);
+            break;
+        case "batch":
+            batch(args);
+            break;
         default:
             System.out.println("No command with that name exists.");
-            System.exit(0);
+            exit();
+        }
+    }
+
+    /**
+     * Ends the current command. The program exits, unless the
+     * repository is resident, in which case only the command is
+     * abandoned.
+     */
+    static void exit() {
+        if (_resident) {
+            throw new ExitException();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Opens the repository for a command, unless it is resident.
+     */
+    static void openRepo() {
+        if (!_resident) {
+            _repo = new Repo(GITLETDIR);
+        }
+    }
+
+    /**
+     * Saves the repository after a command, unless it is resident,
+     * in which case its owner decides when to save it.
+     */
+    static void saveRepo() {
+        if (!_resident) {
+            _repo.save();
+        }
+    }
+
+    /**
+     * Makes REPO the repository used by every following command,
+     * instead of reopening it for each one; commands that end
+     * early then throw an ExitException rather than exiting, and
+     * commands do not save the repository.
+     * @param repo the resident repository
+     */
+    static void setResident(Repo repo) {
+        _repo = repo;
+        _resident = true;
+    }
+
+    /**
+     * Starts a daemon serving this repository, unless the
+     * operand is "stop" (which is only handled by a running daemon).
+     * @param args command and operands
+     */
+    public static void daemon(String... args) throws IOException {
+        if (!GITLETDIR.isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            exit();
+        } else if (args.length > 1) {
+            System.out.println("No daemon is running.");
+            exit();
+        }
+        new Daemon(DAEMON_SOCKET).serve();
+    }
+
+    /**
+     * Runs the commands read from a file, or from the standard
+     * input if none is given.
+     * @param args command and operands
+     */
+    public static void batch(String... args) throws IOException {
+        if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            exit();
+        }
+        if (args.length == 1) {
+            new Batch(new InputStreamReader(System.in)).run();
+        } else if (!new File(args[1]).isFile()) {
+            System.out.println("File does not exist.");
+            exit();
+        } else {
+            try (Reader input = new FileReader(args[1])) {
+                new Batch(input).run();
+            }
         }
     }
 
@@ -117,112 +228,145 @@ public class Main {
     }
 
     public static void init() throws IOException {
-        GITLETDIR.mkdir();
-        _repository.createNewFile();
-        _repo = new Repo();
-        Utils.writeObject(_repository, _repo);
+        _repo = Repo.init(GITLETDIR);
     }
 
-    public static void add(String fileName) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
-        _repo.add(fileName);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+    public static void add(List<String> fileNames) throws IOException {
+        openRepo();
+        _repo.add(fileNames);
+        saveRepo();
     }
 
     public static void commit(String msg) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.commit(msg);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+        saveRepo();
     }
 
     public static void remove(String fileName) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.remove(fileName);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+        saveRepo();
     }
 
     public static void log() {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.simpleLog();
+        saveRepo();
     }
 
     public static void globalLog() {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.globalLog();
+        saveRepo();
     }
 
-    public static void find(String msg) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
-        _repo.find(msg);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+    /**
+     * Runs find. With two operands, the first selects the kind
+     * of query: --word, --prefix or --contains.
+     * @param args command and operands
+     */
+    public static void find(String... args) throws IOException {
+        openRepo();
+        if (args.length == 2) {
+            _repo.find(args[1]);
+        } else if (args.length == 3 && FIND_QUERIES.containsKey(args[1])) {
+            _repo.find(FIND_QUERIES.get(args[1]), args[2]);
+        } else {
+            System.out.println("Incorrect operands.");
+            exit();
+        }
+        saveRepo();
     }
 
     public static void status(String... args) {
-        try {
-            _repo = Utils.readObject(_repository, Repo.class);
-        } catch (IllegalArgumentException excp) {
+        if (!GITLETDIR.isDirectory()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            exit();
         }
+        openRepo();
         _repo.status();
+        saveRepo();
     }
 
     public static void checkout(String... args) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.checkout(args);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+        saveRepo();
     }
 
     public static void branch(String branch) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.branch(branch);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+        saveRepo();
     }
 
     public static void removeBranch(String branch) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.removeBranch(branch);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+        saveRepo();
     }
 
     public static void reset(String commitID) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.reset(commitID);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+        saveRepo();
     }
 
     public static void merge(String branch) throws IOException {
-        _repo = Utils.readObject(_repository, Repo.class);
+        openRepo();
         _repo.merge(branch);
-        resetFile(_repository);
-        Utils.writeObject(_repository, _repo);
+        saveRepo();
+    }
+
+    public static void repack() {
+        openRepo();
+        _repo.repack();
+        saveRepo();
     }
 
     public static void confirmArgs(String... args) {
         if (args.length < 2) {
             System.out.println("Missing argument");
-            System.exit(0);
+            exit();
         }
     }
 
+    /**
+     * Kinds of find queries, by option.
+     */
+    static final Map<String, MessageIndex.Query> FIND_QUERIES = Map.of(
+            "--word", MessageIndex.Query.WORD,
+            "--prefix", MessageIndex.Query.PREFIX,
+            "--contains", MessageIndex.Query.CONTAINS);
     /**
      * Directory containing the entire gitlet version-control-system.
      */
-    private static final File GITLETDIR = new File(".gitlet");
+    static final File GITLETDIR = new File(".gitlet");
     /**
-     * File in which the gitlet repository is stored.
+     * Socket on which a daemon serving this repository listens.
      */
-    private static File _repository = new File(GITLETDIR, "repository");
+    static final File DAEMON_SOCKET = new File(GITLETDIR, "daemon.sock");
     /**
      * Repo object that represents the gitlet repository.
      */
     private static Repo _repo;
+    /**
+     * True iff _repo is kept across commands.
+     */
+    private static boolean _resident;
+
+    /**
+     * Thrown by exit() to abandon a command when the repository
+     * is resident.
+     */
+    static class ExitException extends RuntimeException {
+        /** Serialization version, required of every Throwable.*/
+        private static final long serialVersionUID = 1L;
+
+        /** ExitException constructor.*/
+        ExitException() {
+            super(null, null, false, false);
+        }
+    }
 }
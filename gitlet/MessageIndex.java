@@ -0,0 +1,571 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Persistent inverted index over commit messages. Messages are split
+ * into tokens (maximal runs of letters and digits, lower-cased), and
+ * the index maps every token to the sorted list of ordinals of the
+ * commits whose messages contain it.
+ * The index is split into segments, each covering a range of
+ * consecutive ordinals: the first is stored in FILE, and each
+ * following one in FILE.START, where START is its first ordinal.
+ * A segment file holds a table of fixed-width entries, one per token
+ * in sorted order, giving the position of the token and of its
+ * posting list; the tokens and the posting lists (delta-encoded
+ * varints) follow. Tokens are found by binary search in the
+ * memory-mapped tables, so a query only reads the posting lists it
+ * needs.
+ * Like the HashIndex, the index covers a prefix of the commit graph;
+ * newer commits are searched directly. Once there are enough of them,
+ * they are indexed in a new segment, and the last segments are merged
+ * while the one before the last is no larger than it, so that there
+ * are few segments and each commit is rewritten only a logarithmic
+ * number of times.
+ * @author Oumar Balde
+ */
+public class MessageIndex {
+
+    /** Kinds of message queries.*/
+    enum Query {
+        /** The message is exactly the given text.*/
+        EXACT,
+        /** The message contains every token of the given text,
+         * which has at least one.*/
+        WORD,
+        /** Some token of the message starts with the given text,
+         * ignoring case.*/
+        PREFIX,
+        /** The message contains the given text.*/
+        CONTAINS;
+
+        /** Checks whether MESSAGE matches this kind of query for TEXT.
+         * @param text the text searched for
+         * @param message a commit message
+         * @return true iff MESSAGE matches
+         */
+        boolean matches(String text, String message) {
+            switch (this) {
+            case EXACT:
+                return message.equals(text);
+            case WORD:
+                List<String> words = tokens(text);
+                return !words.isEmpty()
+                        && tokens(message).containsAll(words);
+            case PREFIX:
+                String prefix = text.toLowerCase(Locale.ROOT);
+                for (String token : tokens(message)) {
+                    if (token.startsWith(prefix)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return message.contains(text);
+            }
+        }
+    }
+
+    /** MessageIndex constructor. Maps the segments of the index
+     * stored in FILE, if any.
+     * @param file in which the first segment is stored
+     */
+    MessageIndex(File file) {
+        _file = file;
+        int start = 0;
+        for (File f = file; f.isFile(); f = segmentFile(start)) {
+            Segment segment = new Segment(f, start);
+            _segments.add(segment);
+            start = segment.end();
+        }
+    }
+
+    /** Accessor method that gets the number of indexed commits,
+     * which are those with ordinals 0 .. size() - 1.
+     * @return number of commits
+     */
+    public int size() {
+        return _segments.isEmpty() ? 0
+                : _segments.get(_segments.size() - 1).end();
+    }
+
+    /** Splits MESSAGE into tokens.
+     * @param message a commit message
+     * @return lower-cased maximal runs of letters and digits
+     */
+    static List<String> tokens(String message) {
+        ArrayList<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= message.length(); i += 1) {
+            boolean inToken = i < message.length()
+                    && Character.isLetterOrDigit(message.charAt(i));
+            if (inToken && start == -1) {
+                start = i;
+            } else if (!inToken && start != -1) {
+                tokens.add(message.substring(start, i)
+                        .toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /** Finds the indexed commits that may match a query: every
+     * matching commit is among them, but they must still be checked
+     * with KIND.matches.
+     * @param kind kind of query
+     * @param text the text searched for
+     * @return sorted ordinals of the candidate commits
+     */
+    public int[] candidates(Query kind, String text) {
+        List<String> tokens = tokens(text);
+        IntList result = new IntList();
+        for (Segment segment : _segments) {
+            for (int c : segment.candidates(kind, text, tokens)) {
+                result.add(c);
+            }
+        }
+        return result.toArray();
+    }
+
+    /** Extends the index so that it covers every commit of GRAPH:
+     * the commits not yet indexed form a new segment, which is then
+     * merged with the segments before it while they are no larger.
+     * @param graph commit graph indexed by this
+     */
+    public void update(CommitGraph graph) {
+        int start = size();
+        if (graph.size() <= start) {
+            return;
+        }
+        TreeMap<String, IntList> postings = new TreeMap<>();
+        for (int c = start; c < graph.size(); c += 1) {
+            for (String token : tokens(graph.message(c))) {
+                IntList list =
+                        postings.computeIfAbsent(token, t -> new IntList());
+                if (list.size() == 0 || list.get(list.size() - 1) != c) {
+                    list.add(c);
+                }
+            }
+        }
+        int n = _segments.size();
+        while (n > 0 && _segments.get(n - 1).end() - _segments.get(n - 1)
+                .start() <= graph.size() - start) {
+            n -= 1;
+            start = _segments.get(n).start();
+        }
+        if (n < _segments.size()) {
+            TreeMap<String, IntList> merged = new TreeMap<>();
+            for (Segment segment : _segments.subList(n, _segments.size())) {
+                segment.addTo(merged);
+            }
+            for (Map.Entry<String, IntList> entry : postings.entrySet()) {
+                IntList list = merged.computeIfAbsent(entry.getKey(),
+                        t -> new IntList());
+                for (int i = 0; i < entry.getValue().size(); i += 1) {
+                    list.add(entry.getValue().get(i));
+                }
+            }
+            postings = merged;
+        }
+        Segment segment = Segment.write(segmentFile(start), start,
+                graph.size(), postings);
+        for (int i = n + 1; i < _segments.size(); i += 1) {
+            segmentFile(_segments.get(i).start()).delete();
+        }
+        _segments.subList(n, _segments.size()).clear();
+        _segments.add(segment);
+    }
+
+    /** Gets the file of the segment starting at ordinal START.
+     * @param start first ordinal of the segment
+     * @return FILE for the first segment, FILE.START for the others
+     */
+    private File segmentFile(int start) {
+        return start == 0 ? _file
+                : new File(_file.getPath() + "." + start);
+    }
+
+    /** Test on an indexed token and a query fragment.*/
+    private interface TokenTest {
+        /** Checks whether TOKEN matches FRAGMENT.
+         * @param token an indexed token
+         * @param fragment part of a query
+         * @return true iff the commits containing TOKEN are candidates
+         */
+        boolean test(String token, String fragment);
+    }
+
+    /** One segment of the index, covering the commits with ordinals
+     * start() .. end() - 1.*/
+    private static class Segment {
+
+        /** Segment constructor. Maps the segment stored in FILE.
+         * @param file in which the segment is stored
+         * @param start first ordinal of the segment
+         */
+        Segment(File file, int start) {
+            _start = start;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                byte[] header = new byte[HEADER_SIZE];
+                raf.readFully(header);
+                RecordInput in = new RecordInput(header, MAGIC);
+                if (in.version() != VERSION) {
+                    throw Utils.error(
+                            "Unsupported message index version %d.",
+                            in.version());
+                }
+                _table = raf.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                        raf.length() - HEADER_SIZE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _tokens = _table.getInt(4);
+        }
+
+        /** Segment constructor. Uses the segment held in TABLE.
+         * @param table contents of a segment file, after its header
+         * @param start first ordinal of the segment
+         */
+        private Segment(ByteBuffer table, int start) {
+            _start = start;
+            _table = table;
+            _tokens = _table.getInt(4);
+        }
+
+        /** Writes the segment covering the commits START .. END - 1,
+         * whose tokens have the given POSTINGS, to FILE.
+         * @param file in which the segment is stored
+         * @param start first ordinal of the segment
+         * @param end ordinal following the last of the segment
+         * @param postings sorted ordinals of the commits containing
+         *        each token
+         * @return the new segment
+         */
+        static Segment write(File file, int start, int end,
+                             TreeMap<String, IntList> postings) {
+            int n = postings.size();
+            int[] listStarts = new int[n + 1];
+            RecordOutput lists = new RecordOutput(MAGIC, VERSION);
+            int k = 0;
+            for (IntList list : postings.values()) {
+                listStarts[k] = lists.size() - HEADER_SIZE;
+                k += 1;
+                lists.writeVarInt(list.size());
+                int last = -1;
+                for (int i = 0; i < list.size(); i += 1) {
+                    lists.writeVarInt(list.get(i) - last);
+                    last = list.get(i);
+                }
+            }
+            listStarts[n] = lists.size() - HEADER_SIZE;
+            ByteArrayOutputStream tokens = new ByteArrayOutputStream();
+            ByteBuffer table = ByteBuffer.allocate(8 + 8 * (n + 1));
+            table.putInt(end);
+            table.putInt(n);
+            for (String token : postings.keySet()) {
+                table.putInt(tokens.size());
+                byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+                tokens.write(bytes, 0, bytes.length);
+            }
+            table.putInt(tokens.size());
+            int listBase = table.capacity() + tokens.size();
+            for (int listStart : listStarts) {
+                table.putInt(listBase + listStart);
+            }
+            byte[] record = lists.toByteArray();
+            ByteBuffer out = ByteBuffer.allocate(record.length + listBase);
+            out.put(record, 0, HEADER_SIZE);
+            out.put(table.array());
+            out.put(tokens.toByteArray());
+            out.put(record, HEADER_SIZE, record.length - HEADER_SIZE);
+            Utils.writeContentsAtomically(file, out.array());
+            return new Segment(ByteBuffer.wrap(out.array(), HEADER_SIZE,
+                    out.capacity() - HEADER_SIZE).slice(), start);
+        }
+
+        /** Accessor method that gets the first ordinal of this segment.
+         * @return first indexed ordinal
+         */
+        int start() {
+            return _start;
+        }
+
+        /** Accessor method that gets the ordinal following the last of
+         * this segment.
+         * @return last indexed ordinal, plus one
+         */
+        int end() {
+            return _table.getInt(0);
+        }
+
+        /** Adds the postings of this segment to POSTINGS, which only
+         * holds ordinals of earlier segments.
+         * @param postings sorted ordinals of the commits containing
+         *        each token
+         */
+        void addTo(TreeMap<String, IntList> postings) {
+            for (int k = 0; k < _tokens; k += 1) {
+                IntList list =
+                        postings.computeIfAbsent(token(k), t -> new IntList());
+                for (int c : postings(k)) {
+                    list.add(c);
+                }
+            }
+        }
+
+        /** Finds the commits of this segment that may match a query,
+         * as MessageIndex.candidates does.
+         * @param kind kind of query
+         * @param text the text searched for
+         * @param tokens tokens(TEXT)
+         * @return sorted ordinals of the candidate commits
+         */
+        int[] candidates(Query kind, String text, List<String> tokens) {
+            if (kind == Query.PREFIX) {
+                return union(text.toLowerCase(Locale.ROOT),
+                        (t, p) -> t.startsWith(p), true);
+            } else if (tokens.isEmpty()) {
+                return kind == Query.WORD ? new int[0] : all();
+            }
+            int[] result = null;
+            for (int i = 0; i < tokens.size(); i += 1) {
+                String token = tokens.get(i);
+                int[] postings;
+                if (kind != Query.CONTAINS) {
+                    postings = postings(find(token));
+                } else if (tokens.size() == 1) {
+                    postings = union(token, (t, p) -> t.contains(p), false);
+                } else if (i == 0) {
+                    postings = union(token, (t, p) -> t.endsWith(p), false);
+                } else if (i == tokens.size() - 1) {
+                    postings = union(token, (t, p) -> t.startsWith(p),
+                            true);
+                } else {
+                    postings = postings(find(token));
+                }
+                result = result == null ? postings
+                        : intersect(result, postings);
+            }
+            return result;
+        }
+
+        /** Merges the posting lists of the tokens that pass TEST with
+         * FRAGMENT. Prefix tests only scan the matching range of the
+         * sorted tokens; other tests scan all tokens (but no postings
+         * other than those of the matching tokens).
+         * @param fragment part of a query
+         * @param test test on the tokens
+         * @param prefix true iff only tokens starting with FRAGMENT
+         *        can pass TEST
+         * @return sorted ordinals of the commits containing such a token
+         */
+        private int[] union(String fragment, TokenTest test, boolean prefix) {
+            int start = 0, end = _tokens;
+            if (prefix) {
+                start = lowerBound(fragment);
+                end = lowerBound(fragment + Character.MAX_VALUE);
+            }
+            IntList result = new IntList();
+            for (int k = start; k < end; k += 1) {
+                if (test.test(token(k), fragment)) {
+                    for (int c : postings(k)) {
+                        result.add(c);
+                    }
+                }
+            }
+            int[] sorted = result.toArray();
+            Arrays.sort(sorted);
+            int n = 0;
+            for (int i = 0; i < sorted.length; i += 1) {
+                if (n == 0 || sorted[n - 1] != sorted[i]) {
+                    sorted[n] = sorted[i];
+                    n += 1;
+                }
+            }
+            return Arrays.copyOf(sorted, n);
+        }
+
+        /** Intersects two sorted arrays.
+         * @param a sorted ordinals
+         * @param b sorted ordinals
+         * @return sorted ordinals in both A and B
+         */
+        private static int[] intersect(int[] a, int[] b) {
+            int[] result = new int[Math.min(a.length, b.length)];
+            int n = 0;
+            for (int i = 0, j = 0; i < a.length && j < b.length;) {
+                if (a[i] < b[j]) {
+                    i += 1;
+                } else if (a[i] > b[j]) {
+                    j += 1;
+                } else {
+                    result[n] = a[i];
+                    n += 1;
+                    i += 1;
+                    j += 1;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+
+        /** Gets the ordinals of all the commits of this segment.
+         * @return start() .. end() - 1
+         */
+        private int[] all() {
+            int[] result = new int[end() - _start];
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = _start + i;
+            }
+            return result;
+        }
+
+        /** Finds TOKEN in the sorted table.
+         * @param token a token
+         * @return position of the token, or -1 if it is not indexed
+         */
+        private int find(String token) {
+            int k = lowerBound(token);
+            return k < _tokens && token(k).equals(token) ? k : -1;
+        }
+
+        /** Finds the first indexed token that is not less than TOKEN.
+         * @param token a token
+         * @return position in the sorted table
+         */
+        private int lowerBound(String token) {
+            int lo = 0, hi = _tokens;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (token(mid).compareTo(token) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /** Reads the K-th token of the table.
+         * @param k position in the sorted table
+         * @return the token
+         */
+        private String token(int k) {
+            int base = 8 + 8 * (_tokens + 1);
+            int start = _table.getInt(8 + 4 * k);
+            byte[] bytes = new byte[_table.getInt(8 + 4 * (k + 1)) - start];
+            _table.get(base + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Decodes the posting list of the K-th token of the table.
+         * @param k position in the sorted table, or -1
+         * @return sorted ordinals of the commits containing the token
+         */
+        private int[] postings(int k) {
+            if (k == -1) {
+                return new int[0];
+            }
+            ByteBuffer in = _table.duplicate();
+            in.position(_table.getInt(8 + 4 * (_tokens + 1) + 4 * k));
+            int[] result = new int[readVarInt(in)];
+            int last = -1;
+            for (int i = 0; i < result.length; i += 1) {
+                last += readVarInt(in);
+                result[i] = last;
+            }
+            return result;
+        }
+
+        /** Reads a varint written by RecordOutput.writeVarInt.
+         * @param in buffer positioned at the varint
+         * @return value read
+         */
+        private static int readVarInt(ByteBuffer in) {
+            int result = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = in.get();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+
+        /** First ordinal of this segment.*/
+        private final int _start;
+        /** Counts, offsets, tokens and posting lists.*/
+        private final ByteBuffer _table;
+        /** Number of indexed tokens.*/
+        private final int _tokens;
+    }
+
+    /** Growable list of ints.*/
+    private static class IntList {
+        /** Appends VALUE.
+         * @param value to be added
+         */
+        void add(int value) {
+            if (_size == _values.length) {
+                _values = Arrays.copyOf(_values, 2 * _values.length);
+            }
+            _values[_size] = value;
+            _size += 1;
+        }
+
+        /** Accessor method that gets the I-th value.
+         * @param i index
+         * @return value
+         */
+        int get(int i) {
+            return _values[i];
+        }
+
+        /** Accessor method that gets the number of values.
+         * @return number of values
+         */
+        int size() {
+            return _size;
+        }
+
+        /** Copies the values.
+         * @return the values
+         */
+        int[] toArray() {
+            return Arrays.copyOf(_values, _size);
+        }
+
+        /** The values, followed by unused space.*/
+        private int[] _values = new int[4];
+        /** Number of values.*/
+        private int _size;
+    }
+
+    /** Kind of message index files.*/
+    static final String MAGIC = "GLMI";
+    /** Current version of the message index format.*/
+    static final int VERSION = 1;
+    /** Number of commits missing from the index after which they
+     * are indexed.*/
+    static final int INDEX_LAG = 256;
+    /** Size of the file header: kind and version.*/
+    private static final int HEADER_SIZE = 5;
+
+    /** File in which the first segment is stored.*/
+    private final File _file;
+    /** The segments, in order.*/
+    private final ArrayList<Segment> _segments = new ArrayList<>();
+}
@@ -0,0 +1,150 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/** Tests of the message index.
+ *  @author Oumar Balde
+ */
+public class MessageIndexTest {
+
+    /** Words from which messages are made. */
+    private static final String[] WORDS = {
+        "Fix", "fixes", "bug", "in", "merge", "log", "add", "Added",
+        "wug.txt", "status", "refactor", "commit", "v2", "--", "x"
+    };
+
+    /** Queries checked against every kind of search. */
+    private static final String[] QUERIES = {
+        "Fix bug", "fix", "bug in", "ix bu", "wug.txt", "txt", "wug",
+        "merge log", "add", "ADD", "v", "--", "", "ed wug", "zzz"
+    };
+
+    @Test
+    public void candidatesIncludeEveryMatch() throws IOException {
+        File dir = Files.createTempDirectory("messages").toFile();
+        try {
+            CommitGraph graph = new CommitGraph(
+                new File(dir, "commit-graph"),
+                new File(dir, "commit-messages"),
+                new File(dir, "commit-index"));
+            Random rand = new Random(12);
+            Commit commit = new Commit("initial commit");
+            commit.setSha1(Utils.sha1(commit.encode()));
+            graph.add(commit);
+            addCommits(graph, commit, rand, 2 * MessageIndex.INDEX_LAG);
+            File file = new File(dir, "message-index");
+            new MessageIndex(file).update(graph);
+            MessageIndex index = new MessageIndex(file);
+            assertEquals(graph.size(), index.size());
+            for (MessageIndex.Query kind : MessageIndex.Query.values()) {
+                for (String text : QUERIES) {
+                    int[] candidates = index.candidates(kind, text);
+                    for (int c = 0; c < graph.size(); c += 1) {
+                        if (kind.matches(text, graph.message(c))) {
+                            assertTrue(kind + " " + text + " " + c,
+                                Arrays.binarySearch(candidates, c) >= 0);
+                        }
+                    }
+                }
+            }
+            assertEquals(0,
+                index.candidates(MessageIndex.Query.WORD, "zzz").length);
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /** Indexes the commits a few at a time: each update only writes
+     *  a new segment or merges the last ones, the segments stay few,
+     *  and the candidates are those of an index written at once. */
+    @Test
+    public void updatesAppendSegments() throws IOException {
+        File dir = Files.createTempDirectory("messages").toFile();
+        try {
+            CommitGraph graph = new CommitGraph(
+                new File(dir, "commit-graph"),
+                new File(dir, "commit-messages"),
+                new File(dir, "commit-index"));
+            Random rand = new Random(34);
+            Commit commit = new Commit("initial commit");
+            commit.setSha1(Utils.sha1(commit.encode()));
+            graph.add(commit);
+            File file = new File(dir, "message-index");
+            for (int step = 0; step < 64; step += 1) {
+                commit = addCommits(graph, commit, rand, 10);
+                new MessageIndex(file).update(graph);
+                MessageIndex index = new MessageIndex(file);
+                assertEquals(graph.size(), index.size());
+                File[] segments = dir.listFiles(
+                    (d, name) -> name.startsWith("message-index"));
+                assertTrue(segments.length <= 8);
+            }
+            File whole = new File(dir, "whole-index");
+            new MessageIndex(whole).update(graph);
+            MessageIndex expected = new MessageIndex(whole);
+            MessageIndex index = new MessageIndex(file);
+            for (MessageIndex.Query kind : MessageIndex.Query.values()) {
+                for (String text : QUERIES) {
+                    assertEquals(kind + " " + text,
+                        Arrays.toString(expected.candidates(kind, text)),
+                        Arrays.toString(index.candidates(kind, text)));
+                }
+            }
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void tokens() {
+        assertEquals(Arrays.asList("fix", "wug", "txt", "v2"),
+                     MessageIndex.tokens("Fix wug.txt (v2)!"));
+        assertEquals(Arrays.asList(), MessageIndex.tokens("--"));
+    }
+
+    /** Tokens and prefixes are lower-cased the same way whatever the
+     *  default locale: in Turkish, "I".toLowerCase() is a dotless i. */
+    @Test
+    public void tokensIgnoreDefaultLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals(Arrays.asList("fix", "it"),
+                         MessageIndex.tokens("FIX IT"));
+            assertTrue(MessageIndex.Query.PREFIX.matches("FI", "fix it"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    /** Adds N commits with random messages after PARENT to GRAPH.
+     *  @return the last commit added */
+    private static Commit addCommits(CommitGraph graph, Commit parent,
+                                     Random rand, int n) {
+        Commit commit = parent;
+        for (int i = 0; i < n; i += 1) {
+            String msg = WORDS[rand.nextInt(WORDS.length)];
+            for (int k = rand.nextInt(4); k > 0; k -= 1) {
+                msg += " " + WORDS[rand.nextInt(WORDS.length)];
+            }
+            commit = new Commit(commit, msg);
+            commit.setSha1(Utils.sha1(commit.encode()));
+            graph.add(commit);
+        }
+        return commit;
+    }
+}
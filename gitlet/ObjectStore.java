@@ -0,0 +1,597 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Content-addressed store of gitlet objects. Every object is
+ * kept once, in a file named after the SHA-1 hash of its contents,
+ * under a two-character fan-out directory (objects/ab/cdef...).
+ * The file holds a one-byte flag followed by the contents, either
+ * compressed with Deflate or, if that would not make them smaller,
+ * raw; the id is always the hash of the uncompressed contents.
+ * Working files are hashed and stored by streaming them through
+ * fixed-size buffers, so their size is not bounded by the heap.
+ * Objects may also be moved into packs (see Pack) by repack, after
+ * which they are read from the packs under objects/pack; objects
+ * stored since are kept loose until the next repack, and objects
+ * larger than BIG_OBJECT are always kept loose.
+ * @author Oumar Balde
+ */
+public class ObjectStore {
+
+    /** ObjectStore constructor.
+     * @param dir directory in which the objects are stored
+     */
+    ObjectStore(File dir) {
+        _dir = dir;
+    }
+
+    /** Stores CONTENTS unless an identical object already exists.
+     * The object is written to a temporary file first, so that an
+     * interrupted write never leaves a partial object under its id.
+     * @param contents bytes of the object
+     * @return id (SHA-1 hash) of the object
+     */
+    public String put(byte[] contents) {
+        String id = Utils.sha1(contents);
+        File file = objectFile(id);
+        if (!file.exists() && packOf(id, false) == null) {
+            try {
+                _dir.mkdirs();
+                File tmp = File.createTempFile("put", ".tmp", _dir);
+                try {
+                    byte[] deflated = deflate(contents);
+                    if (deflated == null) {
+                        Utils.writeContents(tmp, new byte[] { RAW },
+                                contents);
+                    } else {
+                        Utils.writeContents(tmp, new byte[] { DEFLATED },
+                                deflated);
+                    }
+                    install(tmp, id);
+                } finally {
+                    tmp.delete();
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return id;
+    }
+
+    /** Stores the contents of FILE unless an identical object
+     * already exists. The file is hashed and copied (deflated, if
+     * its first block compresses) in one pass, using a bounded amount
+     * of memory.
+     * @param file a plain file
+     * @return id (SHA-1 hash) of the object
+     */
+    public String put(File file) {
+        try {
+            _dir.mkdirs();
+            File tmp = File.createTempFile("put", ".tmp", _dir);
+            try {
+                String id;
+                try (FileChannel out = FileChannel.open(tmp.toPath(),
+                        StandardOpenOption.WRITE)) {
+                    if (!compressible(file)) {
+                        out.write(ByteBuffer.wrap(new byte[] { RAW }));
+                        id = stream(file, out);
+                    } else {
+                        out.write(ByteBuffer.wrap(new byte[] { DEFLATED }));
+                        Deflater deflater = new Deflater(LEVEL);
+                        try {
+                            DeflaterOutputStream zout =
+                                    new DeflaterOutputStream(
+                                            Channels.newOutputStream(out),
+                                            deflater, BUFFER_SIZE);
+                            id = stream(file, Channels.newChannel(zout));
+                            zout.finish();
+                        } finally {
+                            deflater.end();
+                        }
+                    }
+                }
+                install(tmp, id);
+                return id;
+            } finally {
+                tmp.delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Computes the id FILE would have in the store, without
+     * storing it, using a bounded amount of memory.
+     * @param file a plain file
+     * @return SHA-1 hash of the file's contents
+     */
+    public static String hash(File file) {
+        try {
+            return stream(file, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the object with the given ID from disk.
+     * @param id of the object
+     * @return contents of the object
+     */
+    public byte[] get(String id) {
+        File file = objectFile(id);
+        if (file.isFile()) {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            try {
+                readLoose(id, file, contents);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return contents.toByteArray();
+        }
+        Pack pack = packOf(id, true);
+        if (pack == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return pack.get(id);
+    }
+
+    /** Writes the object with the given ID to FILE, replacing
+     * its contents, without holding the object in memory unless it
+     * is packed as a delta. The directories on FILE's path are created
+     * if needed.
+     * @param id of the object
+     * @param file destination
+     */
+    public void copyTo(String id, File file) {
+        File source = objectFile(id);
+        Pack pack = source.isFile() ? null : packOf(id, true);
+        if (!source.isFile() && pack == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        try {
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                if (pack != null) {
+                    pack.copyTo(id, out);
+                } else {
+                    readLoose(id, source, out);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the objects with the given IDS to the corresponding
+     * FILES, as copyTo would, using up to WORKERS threads. If some
+     * copies fail, the error raised is the one copyTo would have
+     * raised first had the files been written one at a time in order.
+     * @param ids of the objects
+     * @param files destinations, in the same order as IDS
+     * @param workers maximum number of threads writing files
+     */
+    public void copyAll(List<String> ids, List<File> files, int workers) {
+        int n = ids.size();
+        workers = Math.max(1, Math.min(workers, n));
+        if (workers == 1) {
+            for (int i = 0; i < n; i += 1) {
+                copyTo(ids.get(i), files.get(i));
+            }
+            return;
+        }
+        RuntimeException[] errors = new RuntimeException[n];
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        Runnable worker = () -> {
+            int i;
+            while (!failed.get() && (i = next.getAndIncrement()) < n) {
+                try {
+                    copyTo(ids.get(i), files.get(i));
+                } catch (RuntimeException excp) {
+                    errors[i] = excp;
+                    failed.set(true);
+                }
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            pool.invokeAll(Collections.nCopies(workers,
+                    Executors.callable(worker)));
+        } catch (InterruptedException excp) {
+            throw Utils.error("Interrupted while writing files.");
+        } finally {
+            pool.shutdown();
+        }
+        for (RuntimeException error : errors) {
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /** Checks whether an object with the given ID is stored.
+     * @param id of the object
+     * @return true iff the object exists
+     */
+    public boolean contains(String id) {
+        return objectFile(id).isFile() || packOf(id, false) != null;
+    }
+
+    /** Moves the objects of GROUPS into new packs, replacing every
+     * pack whose objects are all in the new ones, and deletes their
+     * loose copies. Each group lists versions of one path, newest
+     * first, as Pack.write expects. Objects larger than BIG_OBJECT
+     * are left loose, and a new pack is started before one grows
+     * past PACK_LIMIT.
+     * @param groups ids of the objects to pack, by path
+     * @return the new packs
+     */
+    public List<Pack> repack(List<List<String>> groups) {
+        return repack(groups, BIG_OBJECT, PACK_LIMIT);
+    }
+
+    /** Moves the objects of GROUPS no larger than BIG_OBJECT into new
+     * packs of at most PACK_LIMIT bytes, as repack(GROUPS) does.
+     * @param groups ids of the objects to pack, by path
+     * @param bigObject size above which objects are left loose
+     * @param packLimit largest size of a pack of several objects
+     * @return the new packs
+     */
+    synchronized List<Pack> repack(List<List<String>> groups,
+                                   long bigObject, long packLimit) {
+        ArrayList<List<String>> small = new ArrayList<>();
+        for (List<String> group : groups) {
+            ArrayList<String> ids = new ArrayList<>();
+            for (String id : group) {
+                if (!isBig(id, bigObject)) {
+                    ids.add(id);
+                }
+            }
+            small.add(ids);
+        }
+        File dir = new File(_dir, PACK_DIR);
+        dir.mkdirs();
+        List<Pack> written = Pack.write(this, small, dir, packLimit);
+        ArrayList<Pack> packs = new ArrayList<>(written);
+        HashSet<String> names = new HashSet<>();
+        for (Pack pack : written) {
+            names.add(pack.name());
+        }
+        for (Pack old : packs(false)) {
+            if (names.contains(old.name())) {
+                continue;
+            }
+            boolean covered = true;
+            for (int k = 0; k < old.size() && covered; k += 1) {
+                String id = old.id(k);
+                covered = false;
+                for (Pack pack : written) {
+                    covered = covered || pack.contains(id);
+                }
+            }
+            if (covered) {
+                old.delete(dir);
+            } else {
+                packs.add(old);
+            }
+        }
+        _packs = packs;
+        for (Pack pack : written) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                File file = objectFile(pack.id(k));
+                if (file.delete()) {
+                    file.getParentFile().delete();
+                }
+            }
+        }
+        return written;
+    }
+
+    /** Compresses CONTENTS with Deflate at the configured level.
+     * @param contents bytes of an object
+     * @return compressed contents, or null if they would not be
+     *         smaller than CONTENTS
+     */
+    static byte[] deflate(byte[] contents) {
+        Deflater deflater = new Deflater(LEVEL);
+        try {
+            deflater.setInput(contents);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[Math.min(BUFFER_SIZE,
+                    contents.length + 64)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() >= contents.length) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Decompresses DATA, produced by deflate.
+     * @param data compressed bytes
+     * @return the original bytes
+     */
+    static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try (InflaterInputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(data), inflater, BUFFER_SIZE)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt compressed object.");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Checks whether the contents of FILE are worth compressing:
+     * its first block is smaller once deflated.
+     * @param file a plain file
+     * @return true iff FILE is stored deflated
+     */
+    private static boolean compressible(File file) throws IOException {
+        byte[] block;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            block = in.readNBytes(BUFFER_SIZE);
+        }
+        return deflate(block) != null;
+    }
+
+    /** Writes the contents of the loose object ID, stored in FILE, to
+     * OUT, streaming them through an inflater if they are deflated.
+     * @param id of the object
+     * @param file holding the object
+     * @param out destination
+     */
+    private static void readLoose(String id, File file, OutputStream out)
+            throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int flag = in.read();
+            if (flag == RAW) {
+                in.transferTo(out);
+            } else if (flag == DEFLATED) {
+                Inflater inflater = new Inflater();
+                try {
+                    new InflaterInputStream(in, inflater, BUFFER_SIZE)
+                            .transferTo(out);
+                } catch (ZipException excp) {
+                    throw Utils.error("Corrupt object %s.", id);
+                } finally {
+                    inflater.end();
+                }
+            } else {
+                throw Utils.error("Corrupt object %s.", id);
+            }
+        }
+    }
+
+    /** Checks whether object ID is larger than LIMIT bytes. A loose
+     * object is measured without reading more than LIMIT bytes of it.
+     * @param id of the object
+     * @param limit size in bytes
+     * @return true iff the object is larger than LIMIT
+     */
+    private boolean isBig(String id, long limit) {
+        File file = objectFile(id);
+        if (!file.isFile()) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int flag = in.read();
+            if (flag == RAW) {
+                return file.length() - 1 > limit;
+            } else if (flag != DEFLATED) {
+                throw Utils.error("Corrupt object %s.", id);
+            }
+            Inflater inflater = new Inflater();
+            try {
+                InputStream contents = new InflaterInputStream(in,
+                        inflater, BUFFER_SIZE);
+                long size = 0, skipped;
+                while (size <= limit
+                        && (skipped = contents.skip(limit + 1 - size)) > 0) {
+                    size += skipped;
+                }
+                return size > limit;
+            } catch (ZipException excp) {
+                throw Utils.error("Corrupt object %s.", id);
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Moves TMP, a complete object file, to the place of object ID,
+     * unless the object already exists, in which case TMP is left for
+     * the caller to delete.
+     * @param tmp temporary file holding the object
+     * @param id of the object
+     */
+    private void install(File tmp, String id) throws IOException {
+        File target = objectFile(id);
+        if (!target.exists() && packOf(id, false) == null) {
+            target.getParentFile().mkdirs();
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** Finds the pack holding object ID. Packs written by another
+     * process since they were last listed are only looked for if
+     * RELOAD.
+     * @param id of the object
+     * @param reload true iff the packs are listed again when ID is
+     *        not found
+     * @return the pack holding ID, or null if it is not packed
+     */
+    private Pack packOf(String id, boolean reload) {
+        for (Pack pack : packs(false)) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        if (!reload) {
+            return null;
+        }
+        for (Pack pack : packs(true)) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Accessor method that gets the packs, listing them the first
+     * time or if RELOAD. Packs already mapped are not mapped again.
+     * @param reload true iff the packs are listed again
+     * @return the packs
+     */
+    private synchronized List<Pack> packs(boolean reload) {
+        if (_packs == null || reload) {
+            HashMap<String, Pack> known = new HashMap<>();
+            if (_packs != null) {
+                for (Pack pack : _packs) {
+                    known.put(pack.name(), pack);
+                }
+            }
+            ArrayList<Pack> packs = new ArrayList<>();
+            File dir = new File(_dir, PACK_DIR);
+            List<String> names = Utils.plainFilenamesIn(dir);
+            for (String name : names == null ? List.<String>of() : names) {
+                if (name.endsWith(Pack.INDEX_SUFFIX)) {
+                    String packName = name.substring(0,
+                            name.length() - Pack.INDEX_SUFFIX.length());
+                    packs.add(known.containsKey(packName)
+                            ? known.get(packName)
+                            : new Pack(new File(dir, name)));
+                }
+            }
+            _packs = packs;
+        }
+        return _packs;
+    }
+
+    /** Helper method that gets the file holding object ID.
+     * @param id of the object
+     * @return file of the object
+     */
+    private File objectFile(String id) {
+        return Utils.join(_dir, id.substring(0, 2), id.substring(2));
+    }
+
+    /** Feeds the contents of FILE through a SHA-1 digest and, if OUT
+     * is non-null, copies them to OUT. Small files are read through a
+     * fixed-size buffer; large files are memory-mapped a window at a
+     * time.
+     * @param file a plain file
+     * @param out destination of the copy, or null
+     * @return SHA-1 hash of the file's contents
+     */
+    private static String stream(File file, WritableByteChannel out)
+            throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                    MappedByteBuffer window = in.map(
+                            FileChannel.MapMode.READ_ONLY, pos,
+                            Math.min(MAP_WINDOW, size - pos));
+                    md.update(window.duplicate());
+                    while (out != null && window.hasRemaining()) {
+                        out.write(window);
+                    }
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer.duplicate());
+                    while (out != null && buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+        }
+        return Utils.toHex(md.digest());
+    }
+
+    /** Default number of threads writing files in copyAll: the
+     * gitlet.workers system property, or the number of processors.*/
+    static final int WORKERS = Integer.getInteger("gitlet.workers",
+            Runtime.getRuntime().availableProcessors());
+    /** Compression level of stored objects, from 0 (none) to 9
+     * (smallest): the gitlet.compression system property, or
+     * Deflate's default.*/
+    static final int LEVEL = Integer.getInteger("gitlet.compression",
+            Deflater.DEFAULT_COMPRESSION);
+    /** Size in bytes above which objects are left loose by repack,
+     * so that they are never read whole into memory: the
+     * gitlet.bigFileThreshold system property, or 16 MiB.*/
+    static final long BIG_OBJECT = Long.getLong("gitlet.bigFileThreshold",
+            1 << 24);
+    /** Size in bytes past which repack starts a new pack, well within
+     * the offsets a pack index can hold.*/
+    static final long PACK_LIMIT = 1L << 30;
+    /** Flag of the objects stored raw.*/
+    static final byte RAW = 0;
+    /** Flag of the objects stored deflated.*/
+    static final byte DEFLATED = 1;
+    /** Name of the subdirectory holding the packs.*/
+    static final String PACK_DIR = "pack";
+    /** Size of the buffer through which files are streamed.*/
+    static final int BUFFER_SIZE = 1 << 16;
+    /** Files at least this large are memory-mapped.*/
+    static final long MAP_THRESHOLD = 1 << 24;
+    /** Size of the memory-mapped window for large files.*/
+    static final long MAP_WINDOW = 1 << 26;
+
+    /** Directory containing the objects.*/
+    private final File _dir;
+    /** The packs, or null if they have not been listed yet.*/
+    private List<Pack> _packs;
+}
@@ -0,0 +1,283 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Tests of the object store.
+ *  @author Oumar Balde
+ */
+public class ObjectStoreTest {
+
+    @Test
+    public void putIsContentAddressed() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            ObjectStore store = new ObjectStore(dir);
+            String id = store.put("wug".getBytes());
+            assertEquals(Utils.sha1("wug"), id);
+            assertEquals(id, store.put("wug".getBytes()));
+            assertArrayEquals("wug".getBytes(), store.get(id));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void objectsAreDeflatedUnlessIncompressible() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            File objects = new File(dir, "objects");
+            ObjectStore store = new ObjectStore(objects);
+            Random random = new Random(42);
+            byte[] text = "wug\n".repeat(50000).getBytes();
+            byte[] noise = new byte[text.length];
+            random.nextBytes(noise);
+            for (byte[] contents : new byte[][] { text, noise, {} }) {
+                String id = store.put(contents);
+                long stored = Utils.join(objects, id.substring(0, 2),
+                        id.substring(2)).length();
+                if (contents == text) {
+                    assertTrue(stored < contents.length / 10);
+                } else {
+                    assertEquals(contents.length + 1, stored);
+                }
+                assertArrayEquals(contents, store.get(id));
+                File file = new File(dir, "file");
+                Files.write(file.toPath(), contents);
+                Utils.join(objects, id.substring(0, 2),
+                        id.substring(2)).delete();
+                assertEquals(id, store.put(file));
+                assertEquals(stored, Utils.join(objects, id.substring(0, 2),
+                        id.substring(2)).length());
+                File copy = new File(dir, "copy");
+                store.copyTo(id, copy);
+                assertArrayEquals(contents, Files.readAllBytes(copy.toPath()));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** A file that cannot be read is not stored, and leaves no
+     *  temporary file behind. */
+    @Test
+    public void failedPutLeavesNoTemporaryFile() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            File objects = new File(dir, "objects");
+            ObjectStore store = new ObjectStore(objects);
+            try {
+                store.put(new File(dir, "missing.txt"));
+                fail("a missing file was stored");
+            } catch (IllegalArgumentException excp) {
+                assertEquals(0, objects.list().length);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Adds a file larger than the maximum heap size: it can only
+     *  be stored if add streams it.  The unit target runs with a
+     *  small -Xmx so that this stays cheap; the test is skipped
+     *  under a heap too large to exceed on disk reasonably. */
+    @Test
+    public void addFileLargerThanHeap() throws Exception {
+        long size = Runtime.getRuntime().maxMemory() + (1 << 20);
+        if (size > MAX_TEST_FILE) {
+            return;
+        }
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            File big = new File(dir, "big.bin");
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] chunk = new byte[1 << 20];
+            try (OutputStream out = Files.newOutputStream(big.toPath())) {
+                for (long n = 0; n < size; n += chunk.length) {
+                    chunk[(int) (n % chunk.length)] += 1;
+                    int len = (int) Math.min(chunk.length, size - n);
+                    md.update(chunk, 0, len);
+                    out.write(chunk, 0, len);
+                }
+            }
+            String expected = Utils.toHex(md.digest());
+            assertEquals(expected, ObjectStore.hash(big));
+            ObjectStore store = new ObjectStore(new File(dir, "objects"));
+            assertEquals(expected, store.put(big));
+            assertTrue(store.contains(expected));
+            File copy = new File(dir, "copy.bin");
+            store.copyTo(expected, copy);
+            assertEquals(size, copy.length());
+            String small = store.put("small".getBytes());
+            List<Pack> packs = store.repack(Arrays.asList(
+                    Arrays.asList(expected, small)));
+            assertEquals(1, packs.size());
+            assertEquals(1, packs.get(0).size());
+            assertTrue(packs.get(0).contains(small));
+            assertTrue(Utils.join(dir, "objects", expected.substring(0, 2),
+                    expected.substring(2)).isFile());
+            copy.delete();
+            store.copyTo(expected, copy);
+            assertEquals(size, copy.length());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void copyAllMatchesSequentialCopies() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            ObjectStore store = new ObjectStore(new File(dir, "objects"));
+            ArrayList<String> ids = new ArrayList<>();
+            for (int i = 0; i < 50; i += 1) {
+                ids.add(store.put(("file " + i).getBytes()));
+            }
+            for (int workers : new int[] { 1, 2, 4, 8, 16 }) {
+                File out = new File(dir, "out" + workers);
+                out.mkdir();
+                ArrayList<File> files = new ArrayList<>();
+                for (int i = 0; i < ids.size(); i += 1) {
+                    files.add(new File(out, "f" + i));
+                }
+                store.copyAll(ids, files, workers);
+                for (int i = 0; i < ids.size(); i += 1) {
+                    assertEquals("file " + i,
+                            Utils.readContentsAsString(files.get(i)));
+                }
+            }
+            ids.set(10, Utils.sha1("missing 10"));
+            ids.set(30, Utils.sha1("missing 30"));
+            ArrayList<File> files = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i += 1) {
+                files.add(new File(dir, "g" + i));
+            }
+            try {
+                store.copyAll(ids, files, 8);
+                fail("missing objects were not reported");
+            } catch (GitletException excp) {
+                assertEquals("Missing object " + ids.get(10) + ".",
+                        excp.getMessage());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void packedObjectsAreRead() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            ObjectStore store = new ObjectStore(new File(dir, "objects"));
+            ArrayList<String> versions = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 3 * Pack.MAX_DEPTH; i += 1) {
+                text.append("line ").append(i).append("\n");
+                versions.add(0, store.put(text.toString().getBytes()));
+            }
+            String other = store.put("other".getBytes());
+            String loose = store.put("loose".getBytes());
+            List<Pack> packs = store.repack(Arrays.asList(versions,
+                    Arrays.asList(other, versions.get(0))));
+            assertEquals(1, packs.size());
+            Pack pack = packs.get(0);
+            assertEquals(versions.size() + 1, pack.size());
+            assertTrue(pack.deltas() > 0);
+            assertTrue(pack.packBytes() < pack.objectBytes());
+            for (ObjectStore s : new ObjectStore[] {
+                    store, new ObjectStore(new File(dir, "objects")) }) {
+                assertFalse(Utils.join(dir, "objects", other.substring(0, 2),
+                        other.substring(2)).exists());
+                assertTrue(s.contains(other));
+                assertArrayEquals("other".getBytes(), s.get(other));
+                assertArrayEquals("loose".getBytes(), s.get(loose));
+                for (int i = 0; i < versions.size(); i += 1) {
+                    assertEquals(Utils.sha1(s.get(versions.get(i))),
+                            versions.get(i));
+                }
+                File copy = new File(dir, "copy");
+                s.copyTo(versions.get(5), copy);
+                assertEquals(versions.get(5), ObjectStore.hash(copy));
+                s.copyTo(other, copy);
+                assertEquals("other", Utils.readContentsAsString(copy));
+            }
+            assertEquals(other, store.put("other".getBytes()));
+            assertFalse(Utils.join(dir, "objects", other.substring(0, 2),
+                    other.substring(2)).exists());
+            Pack repacked = store.repack(Arrays.asList(versions,
+                    Arrays.asList(other, loose))).get(0);
+            assertEquals(pack.size() + 1, repacked.size());
+            File[] packFiles = Utils.join(dir, "objects", "pack").listFiles();
+            assertEquals(2, packFiles.length);
+            assertArrayEquals("loose".getBytes(),
+                    new ObjectStore(new File(dir, "objects")).get(loose));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Repacks with a small size threshold and pack limit: the large
+     *  file stays loose, the other objects are spread over several
+     *  packs, and every object, whole or delta, reads back intact. */
+    @Test
+    public void repackLeavesLargeObjectsLoose() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            File objects = new File(dir, "objects");
+            ObjectStore store = new ObjectStore(objects);
+            byte[] noise = new byte[1 << 14];
+            new Random(42).nextBytes(noise);
+            String big = store.put(noise);
+            ArrayList<String> versions = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 200; i += 1) {
+                text.append("line ").append(i).append("\n");
+                versions.add(0, store.put(text.toString().getBytes()));
+            }
+            versions.add(big);
+            List<Pack> packs = store.repack(Arrays.asList(versions),
+                    1 << 12, 1 << 11);
+            assertTrue(packs.size() > 1);
+            int packed = 0;
+            for (Pack pack : packs) {
+                assertFalse(pack.contains(big));
+                packed += pack.size();
+            }
+            assertEquals(versions.size() - 1, packed);
+            assertTrue(Utils.join(objects, big.substring(0, 2),
+                    big.substring(2)).isFile());
+            ObjectStore reopened = new ObjectStore(objects);
+            File copy = new File(dir, "copy");
+            for (String id : versions) {
+                assertEquals(id, Utils.sha1(reopened.get(id)));
+                reopened.copyTo(id, copy);
+                assertEquals(id, ObjectStore.hash(copy));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Recursively deletes DIR. */
+    static void delete(File dir) throws IOException {
+        try (Stream<java.nio.file.Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Largest file addFileLargerThanHeap will create. */
+    private static final long MAX_TEST_FILE = 1L << 30;
+}
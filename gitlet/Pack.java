@@ -0,0 +1,501 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A pack: many objects stored in one file, most of them as deltas
+ * against another version of the same path, with an index mapping
+ * their ids to their place in the pack. The index is laid out like
+ * the hash index of commits: a fan-out table by first byte, the ids
+ * in sorted order, then the position of each object's entry and the
+ * size of the object. Both files are memory-mapped, so reading one
+ * object touches only its entry, its index slot and the entries of
+ * its delta bases.
+ * An entry holds its kind and the length of its data, then the data:
+ * either an object stored whole or a delta (see Delta) against
+ * another entry of the pack, given by its offset; like loose objects,
+ * either is deflated if that makes it smaller. Delta chains are at
+ * most MAX_DEPTH long, which bounds the work needed to read any
+ * object. Objects stored whole can be copied out without holding them
+ * in memory.
+ * @author Oumar Balde
+ */
+public class Pack {
+
+    /** Pack constructor. Maps the pack whose index is INDEX.
+     * @param index index file of the pack, named pack-ID.idx
+     */
+    Pack(File index) {
+        String name = index.getName();
+        _name = name.substring(0, name.length() - INDEX_SUFFIX.length());
+        _index = map(index, INDEX_MAGIC);
+        _pack = map(new File(index.getParentFile(), _name + PACK_SUFFIX),
+                PACK_MAGIC);
+        _size = _index.getInt(4 * (FANOUT - 1));
+        if (_index.capacity() != 4 * FANOUT + _size * ENTRY_SIZE) {
+            throw Utils.error("Corrupt pack index %s.", name);
+        }
+    }
+
+    /** Writes packs holding the objects of GROUPS to DIR. Each group
+     * lists versions of one path, newest first: the first is stored
+     * whole, and each following version as a delta against the one
+     * before it, unless the delta would not be at most half the
+     * version's size or the chain would exceed MAX_DEPTH. A new pack
+     * is started, with a whole object, whenever the next entry would
+     * make the current one larger than LIMIT bytes, so that every
+     * offset fits in the index.
+     * @param objects object store holding the objects
+     * @param groups ids of the objects to pack, by path
+     * @param dir directory of the packs
+     * @param limit largest size of a pack holding more than one object
+     * @return the new packs, in the order they were written
+     */
+    static List<Pack> write(ObjectStore objects, List<List<String>> groups,
+                            File dir, long limit) {
+        ArrayList<Pack> packs = new ArrayList<>();
+        HashSet<String> written = new HashSet<>();
+        Writer writer = null;
+        try {
+            for (List<String> group : groups) {
+                byte[] base = null;
+                int baseOffset = 0, depth = 0;
+                for (String id : group) {
+                    if (!written.add(id)) {
+                        continue;
+                    }
+                    byte[] contents = objects.get(id);
+                    if (writer != null && writer.size() + ENTRY_HEADER
+                            + 4 + contents.length > limit) {
+                        packs.add(writer.finish());
+                        writer = null;
+                    }
+                    if (writer == null) {
+                        writer = new Writer(dir);
+                        base = null;
+                    }
+                    byte[] delta = null;
+                    if (base != null && depth < MAX_DEPTH) {
+                        delta = Delta.encode(base, contents);
+                        if (delta.length > contents.length / 2) {
+                            delta = null;
+                        }
+                    }
+                    int offset;
+                    if (delta == null) {
+                        offset = writer.add(id, contents.length, WHOLE,
+                                contents, 0);
+                        depth = 0;
+                    } else {
+                        offset = writer.add(id, contents.length, DELTA,
+                                delta, baseOffset);
+                        depth += 1;
+                    }
+                    base = contents;
+                    baseOffset = offset;
+                }
+            }
+            if (writer != null) {
+                packs.add(writer.finish());
+                writer = null;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (writer != null) {
+                writer.abandon();
+            }
+        }
+        return packs;
+    }
+
+    /** Accessor method that gets the name of this pack, pack-ID.
+     * @return name of the pack
+     */
+    public String name() {
+        return _name;
+    }
+
+    /** Accessor method that gets the number of objects in this pack.
+     * @return number of objects
+     */
+    public int size() {
+        return _size;
+    }
+
+    /** Accessor method that gets the id of the Kth object, in sorted
+     * order.
+     * @param k position in the index
+     * @return id of the object
+     */
+    public String id(int k) {
+        byte[] hash = new byte[HASH_SIZE];
+        _index.get(4 * FANOUT + k * HASH_SIZE, hash);
+        return Utils.toHex(hash);
+    }
+
+    /** Checks whether the object with the given ID is in this pack.
+     * @param id of the object
+     * @return true iff the object is packed here
+     */
+    public boolean contains(String id) {
+        return find(Utils.fromHex(id)) >= 0;
+    }
+
+    /** Reads the object with the given ID.
+     * @param id of the object
+     * @return contents of the object, or null if it is not in this pack
+     */
+    public byte[] get(String id) {
+        int k = find(Utils.fromHex(id));
+        return k < 0 ? null : get(entryOffset(k), 0);
+    }
+
+    /** Writes the object with the given ID to OUT. An object stored
+     * whole is streamed from the mapped pack, inflating it a buffer at
+     * a time if it is deflated, so that it is never held in memory;
+     * an object stored as a delta is rebuilt first.
+     * @param id of an object of this pack
+     * @param out destination
+     */
+    void copyTo(String id, OutputStream out) throws IOException {
+        int k = find(Utils.fromHex(id));
+        if (k < 0) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        int offset = entryOffset(k);
+        byte kind = _pack.get(offset);
+        if ((kind & DELTA) != 0) {
+            out.write(get(offset, 0));
+            return;
+        }
+        ByteBuffer data = _pack.slice(offset + ENTRY_HEADER,
+                _pack.getInt(offset + 1));
+        if ((kind & DEFLATED) == 0) {
+            WritableByteChannel channel = Channels.newChannel(out);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            return;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary())) {
+                    throw Utils.error("Corrupt pack %s.", _name);
+                }
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt pack %s.", _name);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Accessor method that gets the number of objects stored as
+     * deltas.
+     * @return number of deltas
+     */
+    public int deltas() {
+        int n = 0;
+        for (int k = 0; k < _size; k += 1) {
+            if ((_pack.get(entryOffset(k)) & DELTA) != 0) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Accessor method that gets the total size of the objects, as
+     * they would be stored unpacked.
+     * @return sum of the sizes of the objects
+     */
+    public long objectBytes() {
+        long total = 0;
+        for (int k = 0; k < _size; k += 1) {
+            total += _index.getInt(offsetPosition(_size, k) + 4);
+        }
+        return total;
+    }
+
+    /** Accessor method that gets the size of the pack file.
+     * @return size in bytes, header included
+     */
+    public long packBytes() {
+        return _pack.capacity() + HEADER_SIZE;
+    }
+
+    /** Deletes the files of this pack: its index first, so that the
+     * pack is never found without its objects.
+     * @param dir directory of the packs
+     */
+    void delete(File dir) {
+        new File(dir, _name + INDEX_SUFFIX).delete();
+        new File(dir, _name + PACK_SUFFIX).delete();
+    }
+
+    /** Reads the object whose entry is at OFFSET, rebuilding it from
+     * its delta base if needed.
+     * @param offset position of the entry in the mapped pack
+     * @param depth number of deltas already followed
+     * @return contents of the object
+     */
+    private byte[] get(int offset, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw Utils.error("Corrupt pack %s.", _name);
+        }
+        byte kind = _pack.get(offset);
+        byte[] data = new byte[_pack.getInt(offset + 1)];
+        boolean delta = (kind & DELTA) != 0;
+        _pack.get(offset + ENTRY_HEADER + (delta ? 4 : 0), data);
+        if ((kind & DEFLATED) != 0) {
+            data = ObjectStore.inflate(data);
+        }
+        if (!delta) {
+            return data;
+        }
+        int base = _pack.getInt(offset + ENTRY_HEADER) - HEADER_SIZE;
+        return Delta.apply(get(base, depth + 1), data);
+    }
+
+    /** Finds the position of HASH in the index.
+     * @param hash id of an object, as bytes
+     * @return position of the id, or -1 if it is not in this pack
+     */
+    private int find(byte[] hash) {
+        int b = hash[0] & 0xFF;
+        int lo = b == 0 ? 0 : _index.getInt(4 * (b - 1));
+        int hi = _index.getInt(4 * b);
+        byte[] id = new byte[HASH_SIZE];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            _index.get(4 * FANOUT + mid * HASH_SIZE, id);
+            int cmp = Arrays.compareUnsigned(id, hash);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Gets the position in the mapped pack of the Kth object's entry.
+     * @param k position in the index
+     * @return offset of the entry after the pack header
+     */
+    private int entryOffset(int k) {
+        return _index.getInt(offsetPosition(_size, k)) - HEADER_SIZE;
+    }
+
+    /** Gets the position in an index of N objects of the offset
+     * of the Kth object's entry, followed by the size of the object.
+     * @param n number of objects
+     * @param k position in the index
+     * @return offset in the index, after its header
+     */
+    private static int offsetPosition(int n, int k) {
+        return 4 * FANOUT + n * HASH_SIZE + 8 * k;
+    }
+
+    /** Maps FILE after its header, checking that it is of kind MAGIC.
+     * @param file a pack or index file
+     * @param magic expected kind of FILE
+     * @return contents of FILE after the header
+     */
+    private static ByteBuffer map(File file, String magic) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] header = new byte[HEADER_SIZE];
+            raf.readFully(header);
+            RecordInput in = new RecordInput(header, magic);
+            if (in.version() != VERSION) {
+                throw Utils.error("Unsupported pack version %d.",
+                        in.version());
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, raf.length() - HEADER_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Maximum length of a chain of deltas.*/
+    static final int MAX_DEPTH = 10;
+    /** Kind of pack files.*/
+    static final String PACK_MAGIC = "GLPK";
+    /** Kind of pack index files.*/
+    static final String INDEX_MAGIC = "GLPI";
+    /** Current version of the pack formats.*/
+    static final int VERSION = 2;
+    /** Suffix of pack files.*/
+    static final String PACK_SUFFIX = ".pack";
+    /** Suffix of pack index files.*/
+    static final String INDEX_SUFFIX = ".idx";
+    /** Kind of the entries holding a whole object.*/
+    private static final byte WHOLE = 0;
+    /** Kind of the entries holding a delta.*/
+    private static final byte DELTA = 1;
+    /** Flag added to the kind of the entries whose data (object or
+     * delta) is deflated.*/
+    private static final byte DEFLATED = 2;
+    /** Size of the file headers: kind and version.*/
+    private static final int HEADER_SIZE = 5;
+    /** Size of the start of every entry: its kind and the length of
+     * its data.*/
+    private static final int ENTRY_HEADER = 5;
+    /** Number of entries of the fan-out table.*/
+    private static final int FANOUT = 256;
+    /** Size of an object id in bytes.*/
+    private static final int HASH_SIZE = Utils.UID_LENGTH / 2;
+    /** Size of the index entry of one object: its id, the offset of
+     * its entry and its size.*/
+    private static final int ENTRY_SIZE = HASH_SIZE + 8;
+
+    /** Name of this pack, pack-ID.*/
+    private final String _name;
+    /** The index, after its header.*/
+    private final ByteBuffer _index;
+    /** The pack, after its header.*/
+    private final ByteBuffer _pack;
+    /** Number of objects in this pack.*/
+    private final int _size;
+
+    /** Writer of one pack, streamed to a temporary file and moved into
+     * place, with its index, once complete.*/
+    private static class Writer {
+
+        /** Writer constructor. Starts a pack in DIR.
+         * @param dir directory of the packs
+         */
+        Writer(File dir) throws IOException {
+            _dir = dir;
+            _tmp = File.createTempFile("pack", PACK_SUFFIX + ".tmp", dir);
+            _out = new BufferedOutputStream(
+                    Files.newOutputStream(_tmp.toPath()));
+            byte[] header = new RecordOutput(PACK_MAGIC, VERSION)
+                    .toByteArray();
+            _out.write(header);
+            _size = header.length;
+        }
+
+        /** Accessor method that gets the size of the pack so far.
+         * @return size in bytes, header included
+         */
+        long size() {
+            return _size;
+        }
+
+        /** Adds the entry of object ID, of the given SIZE, holding
+         * DATA, of the given KIND. A delta also records the offset of
+         * the entry of its base.
+         * @param id of the object
+         * @param size size of the object
+         * @param kind WHOLE or DELTA
+         * @param data the object, or its delta
+         * @param base offset of the base's entry, if KIND is DELTA
+         * @return offset of the new entry in the pack
+         */
+        int add(String id, int size, int kind, byte[] data, int base)
+                throws IOException {
+            byte[] deflated = ObjectStore.deflate(data);
+            if (deflated != null) {
+                kind |= DEFLATED;
+                data = deflated;
+            }
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER + 4);
+            header.put((byte) kind).putInt(data.length);
+            if ((kind & DELTA) != 0) {
+                header.putInt(base);
+            }
+            if (_size + header.position() + data.length
+                    > Integer.MAX_VALUE) {
+                throw Utils.error("Pack too large.");
+            }
+            _out.write(header.array(), 0, header.position());
+            _out.write(data);
+            int offset = (int) _size;
+            _entries.put(id, new int[] { offset, size });
+            _size += header.position() + data.length;
+            return offset;
+        }
+
+        /** Completes the pack: names it after its objects, moves it
+         * into place and writes its index.
+         * @return the new pack
+         */
+        Pack finish() throws IOException {
+            _out.close();
+            String[] ids = _entries.keySet().toArray(new String[0]);
+            String name = "pack-" + Utils.sha1((Object[]) ids);
+            ByteBuffer index = ByteBuffer.allocate(
+                    4 * FANOUT + ids.length * ENTRY_SIZE);
+            int[] fanout = new int[FANOUT];
+            for (int k = 0; k < ids.length; k += 1) {
+                byte[] hash = Utils.fromHex(ids[k]);
+                fanout[hash[0] & 0xFF] += 1;
+                index.put(4 * FANOUT + k * HASH_SIZE, hash);
+                int[] entry = _entries.get(ids[k]);
+                index.putInt(offsetPosition(ids.length, k), entry[0]);
+                index.putInt(offsetPosition(ids.length, k) + 4, entry[1]);
+            }
+            for (int b = 0, count = 0; b < FANOUT; b += 1) {
+                count += fanout[b];
+                index.putInt(4 * b, count);
+            }
+            Files.move(_tmp.toPath(),
+                    new File(_dir, name + PACK_SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            File indexFile = new File(_dir, name + INDEX_SUFFIX);
+            Utils.writeContentsAtomically(indexFile,
+                    new RecordOutput(INDEX_MAGIC, VERSION).toByteArray(),
+                    index.array());
+            return new Pack(indexFile);
+        }
+
+        /** Abandons the pack, deleting its temporary file.*/
+        void abandon() {
+            try {
+                _out.close();
+            } catch (IOException excp) {
+                /* The file is deleted anyway. */
+            }
+            _tmp.delete();
+        }
+
+        /** Directory of the packs.*/
+        private final File _dir;
+        /** Temporary file to which the pack is written.*/
+        private final File _tmp;
+        /** Stream writing _tmp.*/
+        private final OutputStream _out;
+        /** Offset and object size of each entry, by object id.*/
+        private final TreeMap<String, int[]> _entries = new TreeMap<>();
+        /** Size of the pack so far.*/
+        private long _size;
+    }
+}
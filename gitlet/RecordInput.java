@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader for records written by RecordOutput. The reader can be
+ * positioned anywhere in the record, so callers may skip over or
+ * come back to sections they do not need right away.
+ * @author Oumar Balde
+ */
+public class RecordInput {
+
+    /** RecordInput constructor. Checks the record header.
+     * @param bytes the encoded record
+     * @param magic expected four-character kind of the record
+     */
+    RecordInput(byte[] bytes, String magic) {
+        _in = ByteBuffer.wrap(bytes);
+        byte[] header = magic.getBytes(StandardCharsets.US_ASCII);
+        for (byte b : header) {
+            if (!_in.hasRemaining() || _in.get() != b) {
+                throw Utils.error("Corrupt %s record.", magic);
+            }
+        }
+        if (!_in.hasRemaining()) {
+            throw Utils.error("Corrupt %s record.", magic);
+        }
+        _version = _in.get() & 0xFF;
+    }
+
+    /** Reads a varint written by writeVarInt.
+     * @return value read
+     */
+    public int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    /** Reads a varint written by writeVarLong.
+     * @return value read
+     */
+    public long readVarLong() {
+        long result = 0;
+        try {
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = _in.get();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        } catch (BufferUnderflowException excp) {
+            throw Utils.error("Truncated record.");
+        }
+        throw Utils.error("Corrupt varint in record.");
+    }
+
+    /** Reads a fixed-width, big-endian long.
+     * @return value read
+     */
+    public long readLong() {
+        try {
+            return _in.getLong();
+        } catch (BufferUnderflowException excp) {
+            throw Utils.error("Truncated record.");
+        }
+    }
+
+    /** Reads a length-prefixed UTF-8 string.
+     * @return value read
+     */
+    public String readString() {
+        byte[] bytes = readBytes(readVarInt());
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Reads a raw 20-byte SHA-1 id.
+     * @return hexadecimal id
+     */
+    public String readHash() {
+        return Utils.toHex(readBytes(Utils.UID_LENGTH / 2));
+    }
+
+    /** Reads N front-coded paths written by writePaths.
+     * @param n number of paths
+     * @return the paths, in order
+     */
+    public String[] readPaths(int n) {
+        String[] paths = new String[n];
+        String prev = "";
+        for (int i = 0; i < n; i += 1) {
+            int shared = readVarInt();
+            if (shared > prev.length()) {
+                throw Utils.error("Corrupt path table in record.");
+            }
+            prev = prev.substring(0, shared) + readString();
+            paths[i] = prev;
+        }
+        return paths;
+    }
+
+    /** Reads LEN raw bytes into DST, starting at OFF.
+     * @param dst destination
+     * @param off position in DST of the first byte
+     * @param len number of bytes
+     */
+    public void readBytes(byte[] dst, int off, int len) {
+        if (len < 0 || len > _in.remaining()) {
+            throw Utils.error("Truncated record.");
+        }
+        _in.get(dst, off, len);
+    }
+
+    /** Skips N bytes.
+     * @param n number of bytes
+     */
+    public void skip(int n) {
+        seek(position() + n);
+    }
+
+    /** Accessor method that gets the current position.
+     * @return offset from the start of the record
+     */
+    public int position() {
+        return _in.position();
+    }
+
+    /** Moves the reader to POS.
+     * @param pos offset from the start of the record
+     */
+    public void seek(int pos) {
+        if (pos < 0 || pos > _in.limit()) {
+            throw Utils.error("Truncated record.");
+        }
+        _in.position(pos);
+    }
+
+    /** Accessor method that gets the format version of the record.
+     * @return version
+     */
+    public int version() {
+        return _version;
+    }
+
+    /** Reads N raw bytes.
+     * @param n number of bytes
+     * @return bytes read
+     */
+    private byte[] readBytes(int n) {
+        if (n < 0 || n > _in.remaining()) {
+            throw Utils.error("Truncated record.");
+        }
+        byte[] result = new byte[n];
+        _in.get(result);
+        return result;
+    }
+
+    /** The record being read.*/
+    private final ByteBuffer _in;
+    /** Format version of the record.*/
+    private final int _version;
+}
@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer for gitlet's binary record format. Every record starts
+ * with a four-byte magic string identifying its kind and a
+ * one-byte format version, so that the format can evolve.
+ * Integers are written as unsigned LEB128 varints, strings are
+ * length-prefixed UTF-8 and SHA-1 ids are written as 20 raw bytes.
+ * @author Oumar Balde
+ */
+public class RecordOutput {
+
+    /** RecordOutput constructor. Writes the record header.
+     * @param magic four-character kind of the record
+     * @param version format version of the record
+     */
+    RecordOutput(String magic, int version) {
+        _out.writeBytes(magic.getBytes(StandardCharsets.US_ASCII));
+        _out.write(version);
+    }
+
+    /** Writes a non-negative int as a varint.
+     * @param value to be written
+     */
+    public void writeVarInt(int value) {
+        writeVarLong(value);
+    }
+
+    /** Writes a non-negative long as a varint.
+     * @param value to be written
+     */
+    public void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            _out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        _out.write((int) value);
+    }
+
+    /** Writes a fixed-width, big-endian long.
+     * @param value to be written
+     */
+    public void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            _out.write((int) (value >>> shift));
+        }
+    }
+
+    /** Writes a length-prefixed UTF-8 string.
+     * @param value to be written
+     */
+    public void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        _out.writeBytes(bytes);
+    }
+
+    /** Writes a hexadecimal SHA-1 id as 20 raw bytes.
+     * @param id to be written
+     */
+    public void writeHash(String id) {
+        _out.writeBytes(Utils.fromHex(id));
+    }
+
+    /** Writes LEN raw bytes of BYTES, starting at OFF.
+     * @param bytes source
+     * @param off position of the first byte
+     * @param len number of bytes
+     */
+    public void writeBytes(byte[] bytes, int off, int len) {
+        _out.write(bytes, off, len);
+    }
+
+    /** Writes a sorted list of paths front-coded: each path is
+     * stored as the length of the prefix it shares with the
+     * previous path followed by the remaining suffix. The prefix
+     * never ends inside a surrogate pair, so that the suffix is
+     * valid UTF-16.
+     * @param paths sorted paths
+     */
+    public void writePaths(Iterable<String> paths) {
+        String prev = "";
+        for (String path : paths) {
+            int shared = 0;
+            int max = Math.min(prev.length(), path.length());
+            while (shared < max && prev.charAt(shared) == path.charAt(shared)) {
+                shared += 1;
+            }
+            if (shared > 0 && Character.isHighSurrogate(
+                    path.charAt(shared - 1))) {
+                shared -= 1;
+            }
+            writeVarInt(shared);
+            writeString(path.substring(shared));
+            prev = path;
+        }
+    }
+
+    /** Accessor method that gets the bytes written so far.
+     * @return the encoded record
+     */
+    public byte[] toByteArray() {
+        return _out.toByteArray();
+    }
+
+    /** Accessor method that gets the number of bytes written so far,
+     * header included.
+     * @return size of the record
+     */
+    public int size() {
+        return _out.size();
+    }
+
+    /** Buffer holding the record.*/
+    private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+}
@@ -0,0 +1,147 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/** Tests of the binary record format.
+ *  @author Oumar Balde
+ */
+public class RecordTest {
+
+    @Test
+    public void primitivesRoundTrip() {
+        RecordOutput out = new RecordOutput("TEST", 3);
+        out.writeVarInt(0);
+        out.writeVarInt(300);
+        out.writeVarLong(Long.MAX_VALUE);
+        out.writeLong(-5);
+        out.writeString("h\u00e9llo");
+        out.writeHash(ID1);
+        out.writePaths(Arrays.asList("a/b.txt", "a/c.txt", "abc", "b"));
+        RecordInput in = new RecordInput(out.toByteArray(), "TEST");
+        assertEquals(3, in.version());
+        assertEquals(0, in.readVarInt());
+        assertEquals(300, in.readVarInt());
+        assertEquals(Long.MAX_VALUE, in.readVarLong());
+        assertEquals(-5, in.readLong());
+        assertEquals("h\u00e9llo", in.readString());
+        assertEquals(ID1, in.readHash());
+        assertArrayEquals(new String[] {"a/b.txt", "a/c.txt", "abc", "b"},
+                in.readPaths(4));
+    }
+
+    /** Paths sharing the high surrogate of their first character
+     *  (two emoji) are not split inside the surrogate pair. */
+    @Test
+    public void pathsWithSurrogatePairsRoundTrip() {
+        String[] paths = {
+            "\ud83d\ude00.txt", "\ud83d\ude01.txt", "a/\ud83d\ude01",
+            "a/\ud83d\ude01/b"
+        };
+        RecordOutput out = new RecordOutput("TEST", 1);
+        out.writePaths(Arrays.asList(paths));
+        RecordInput in = new RecordInput(out.toByteArray(), "TEST");
+        assertArrayEquals(paths, in.readPaths(paths.length));
+    }
+
+    @Test(expected = GitletException.class)
+    public void wrongMagic() {
+        new RecordInput(new RecordOutput("GLCM", 1).toByteArray(), "GLST");
+    }
+
+    @Test
+    public void commitRoundTrip() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            ObjectStore objects = new ObjectStore(dir);
+            Commit commit0 = new Commit("initial commit");
+            commit0.setSha1(ID1);
+            Commit commit = new Commit(commit0, "two files");
+            TreeMap<String, String> files = new TreeMap<>();
+            files.put("wug.txt", ID1);
+            files.put("dir/notwug.txt", ID2);
+            commit.addFiles(files);
+            commit.writeTree(objects);
+            Commit read = Commit.decode(ID2, commit.encode(), objects);
+            assertEquals(ID2, read.getSha1());
+            assertEquals(ID1, read.getParent());
+            assertEquals("two files", read.getMessage());
+            assertEquals(commit.getTime(), read.getTime());
+            assertEquals(ID2, read.getFile("dir/notwug.txt"));
+            assertEquals(files, read.getFilesTracked());
+        } finally {
+            ObjectStoreTest.delete(dir);
+        }
+    }
+
+    /** Commit and tree ids must not change unless their formats'
+     *  versions do: existing repositories refer to them. */
+    @Test
+    public void idsAreStable() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            ObjectStore objects = new ObjectStore(dir);
+            Commit commit0 = new Commit("initial commit");
+            assertEquals("177378ad9cbba1692e2b31b02a5308961fcbf3b1",
+                    Utils.sha1(commit0.encode()));
+            assertEquals("5b59aad7a1d6ce486660f7c4b66d245a7adc0646",
+                    Tree.EMPTY);
+            commit0.setSha1(Utils.sha1(commit0.encode()));
+            Commit commit = new Commit(commit0, "two files");
+            TreeMap<String, String> files = new TreeMap<>();
+            files.put("wug.txt", Utils.sha1("wug"));
+            files.put("dir/notwug.txt", Utils.sha1("notwug"));
+            commit.addFiles(files);
+            commit.writeTree(objects);
+            assertEquals("621b79ad36db04adba41c14d236800afc4402912",
+                    commit.getTree());
+        } finally {
+            ObjectStoreTest.delete(dir);
+        }
+    }
+
+    @Test
+    public void commitSizeIsIndependentOfFiles() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            ObjectStore objects = new ObjectStore(dir);
+            Commit commit0 = new Commit("initial commit");
+            commit0.setSha1(ID1);
+            Commit small = new Commit(commit0, "files");
+            Commit large = new Commit(commit0, "files");
+            TreeMap<String, String> files = new TreeMap<>();
+            files.put("wug.txt", ID1);
+            small.addFiles(files);
+            for (int i = 0; i < 1000; i += 1) {
+                files.put("dir" + (i % 10) + "/f" + i, ID2);
+            }
+            large.addFiles(files);
+            small.writeTree(objects);
+            large.writeTree(objects);
+            assertEquals(small.encode().length, large.encode().length);
+        } finally {
+            ObjectStoreTest.delete(dir);
+        }
+    }
+
+    @Test
+    public void stagingRoundTrip() {
+        StagingArea staging = new StagingArea();
+        staging.getAdded().put("wug.txt", ID1);
+        staging.getRemoved().put("notwug.txt", ID2);
+        StagingArea read = StagingArea.decode(staging.encode());
+        assertEquals(staging.getAdded(), read.getAdded());
+        assertEquals(staging.getRemoved(), read.getRemoved());
+    }
+
+    /** Sample ids. */
+    private static final String
+        ID1 = "0123456789abcdef0123456789abcdef01234567",
+        ID2 = "fedcba9876543210fedcba9876543210fedcba98";
+}
@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Store of the branches of a repository. Each branch updated
+ * recently is a "loose" ref: a file of its own under refs/heads,
+ * holding the id of its head commit, so that creating, moving or
+ * removing a branch rewrites a few bytes. The other branches are
+ * kept in packed-refs, sorted by name behind a table of offsets, so
+ * that one branch is found by binary search without reading the
+ * others. Once there are enough loose refs, they are all moved into
+ * packed-refs.
+ * Changes are kept in memory until save() is called.
+ * @author Oumar Balde
+ */
+public class Refs {
+
+    /** Refs constructor.
+     * @param dir the .gitlet directory
+     */
+    Refs(File dir) {
+        _loose = Utils.join(dir, "refs", "heads");
+        _packedFile = new File(dir, "packed-refs");
+    }
+
+    /** Accessor method that gets the head commit id of a branch.
+     * @param branch name of the branch
+     * @return id of its head commit, or null if there is no such branch
+     */
+    public String get(String branch) {
+        if (_changes.containsKey(branch)) {
+            return _changes.get(branch);
+        }
+        File file = new File(_loose, fileName(branch));
+        if (file.isFile()) {
+            return Utils.readContentsAsString(file).trim();
+        }
+        return findPacked(branch);
+    }
+
+    /** Accessor method that gets every branch.
+     * @return mapping of branch names to head commit ids
+     */
+    public TreeMap<String, String> all() {
+        TreeMap<String, String> branches = new TreeMap<>();
+        ByteBuffer packed = packed();
+        int n = packed == null ? 0 : packed.getInt(0);
+        for (int k = 0; k < n; k += 1) {
+            branches.put(packedName(packed, k), packedID(packed, k));
+        }
+        List<String> files = Utils.plainFilenamesIn(_loose);
+        if (files != null) {
+            for (String fileName : files) {
+                branches.put(branchName(fileName), Utils.readContentsAsString(
+                        new File(_loose, fileName)).trim());
+            }
+        }
+        for (Map.Entry<String, String> entry : _changes.entrySet()) {
+            if (entry.getValue() == null) {
+                branches.remove(entry.getKey());
+            } else {
+                branches.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return branches;
+    }
+
+    /** Makes BRANCH point to the commit ID.
+     * @param branch name of the branch
+     * @param id of its new head commit
+     */
+    public void put(String branch, String id) {
+        _changes.put(branch, id);
+    }
+
+    /** Removes BRANCH.
+     * @param branch name of the branch
+     */
+    public void remove(String branch) {
+        _changes.put(branch, null);
+    }
+
+    /** Writes the changes made since the last save. Only the loose
+     * refs of the changed branches are written, unless a packed
+     * branch was removed or enough loose refs have accumulated, in
+     * which case packed-refs is rewritten.*/
+    public void save() {
+        if (_changes.isEmpty()) {
+            return;
+        }
+        boolean repack = false;
+        _loose.mkdirs();
+        for (Map.Entry<String, String> entry : _changes.entrySet()) {
+            File file = new File(_loose, fileName(entry.getKey()));
+            if (entry.getValue() != null) {
+                Utils.writeContentsAtomically(file, entry.getValue(), "\n");
+            } else {
+                file.delete();
+                repack |= findPacked(entry.getKey()) != null;
+            }
+        }
+        List<String> files = Utils.plainFilenamesIn(_loose);
+        if (repack || files.size() >= PACK_LAG) {
+            TreeMap<String, String> branches = all();
+            writePacked(branches);
+            for (String fileName : files) {
+                new File(_loose, fileName).delete();
+            }
+        }
+        _changes.clear();
+    }
+
+    /** Gets the name of the loose ref file of BRANCH: the name
+     * itself, except that characters other than ASCII letters,
+     * digits, '-' and '_' are written as %XX escapes of their UTF-8
+     * bytes. In particular, no file name contains a '.', so none can
+     * be taken for a temporary file, or for "." or "..".
+     * @param branch name of a branch
+     * @return name of its file
+     */
+    static String fileName(String branch) {
+        if (branch.isEmpty()) {
+            return "%";
+        }
+        StringBuilder name = new StringBuilder();
+        for (byte b : branch.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (c < 0x80 && (Character.isLetterOrDigit(c) || c == '-'
+                    || c == '_')) {
+                name.append(c);
+            } else {
+                name.append(String.format("%%%02X", b & 0xFF));
+            }
+        }
+        return name.toString();
+    }
+
+    /** Gets the name of the branch whose loose ref is in the file
+     * FILENAME.
+     * @param fileName name produced by fileName(String)
+     * @return name of the branch
+     */
+    static String branchName(String fileName) {
+        if (fileName.equals("%")) {
+            return "";
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < fileName.length(); i += 1) {
+            char c = fileName.charAt(i);
+            if (c == '%') {
+                bytes.write(Integer.parseInt(
+                        fileName.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                bytes.write(c);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Finds BRANCH in packed-refs.
+     * @param branch name of a branch
+     * @return id of its head commit, or null if it is not packed
+     */
+    private String findPacked(String branch) {
+        ByteBuffer packed = packed();
+        if (packed == null) {
+            return null;
+        }
+        int lo = 0;
+        int hi = packed.getInt(0);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = packedName(packed, mid).compareTo(branch);
+            if (cmp == 0) {
+                return packedID(packed, mid);
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return null;
+    }
+
+    /** Accessor method that gets the contents of packed-refs after
+     * the header, mapping the file the first time.
+     * @return contents of packed-refs, or null if there is none
+     */
+    private ByteBuffer packed() {
+        if (_packed == null && _packedFile.isFile()) {
+            try (RandomAccessFile raf =
+                         new RandomAccessFile(_packedFile, "r")) {
+                byte[] header = new byte[HEADER_SIZE];
+                raf.readFully(header);
+                RecordInput in = new RecordInput(header, MAGIC);
+                if (in.version() != VERSION) {
+                    throw Utils.error("Unsupported packed refs version %d.",
+                            in.version());
+                }
+                _packed = raf.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                        raf.length() - HEADER_SIZE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _packed;
+    }
+
+    /** Writes BRANCHES to packed-refs: their number, the offset of
+     * each entry, and the entries (a commit id, the length of the
+     * name and the name in UTF-8), sorted by name.
+     * @param branches mapping of branch names to head commit ids
+     */
+    private void writePacked(TreeMap<String, String> branches) {
+        int n = branches.size();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        ByteBuffer offsets = ByteBuffer.allocate(4 * (n + 1));
+        offsets.putInt(n);
+        for (Map.Entry<String, String> entry : branches.entrySet()) {
+            offsets.putInt(4 * (n + 1) + entries.size());
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            entries.writeBytes(Utils.fromHex(entry.getValue()));
+            entries.writeBytes(ByteBuffer.allocate(4)
+                    .putInt(name.length).array());
+            entries.writeBytes(name);
+        }
+        Utils.writeContentsAtomically(_packedFile,
+                new RecordOutput(MAGIC, VERSION).toByteArray(),
+                offsets.array(), entries.toByteArray());
+        _packed = null;
+    }
+
+    /** Gets the name of the Kth packed branch.
+     * @param packed contents of packed-refs
+     * @param k index of the branch
+     * @return its name
+     */
+    private static String packedName(ByteBuffer packed, int k) {
+        int offset = packed.getInt(4 * (k + 1)) + HASH_SIZE;
+        byte[] name = new byte[packed.getInt(offset)];
+        packed.duplicate().position(offset + 4).get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Gets the head commit id of the Kth packed branch.
+     * @param packed contents of packed-refs
+     * @param k index of the branch
+     * @return its head commit id
+     */
+    private static String packedID(ByteBuffer packed, int k) {
+        byte[] hash = new byte[HASH_SIZE];
+        packed.duplicate().position(packed.getInt(4 * (k + 1))).get(hash);
+        return Utils.toHex(hash);
+    }
+
+    /** Number of loose refs at which they are packed.*/
+    static final int PACK_LAG = 256;
+    /** Kind of packed refs files.*/
+    static final String MAGIC = "GLPR";
+    /** Current version of the packed refs format.*/
+    static final int VERSION = 1;
+    /** Size of the header of packed-refs.*/
+    private static final int HEADER_SIZE = 5;
+    /** Size of a commit id in bytes.*/
+    private static final int HASH_SIZE = Utils.UID_LENGTH / 2;
+
+    /** Directory of the loose refs.*/
+    private final File _loose;
+    /** The packed-refs file.*/
+    private final File _packedFile;
+    /** Contents of packed-refs after its header, or null if not
+     * mapped yet.*/
+    private volatile ByteBuffer _packed;
+    /** Branches changed since the last save, mapped to their new
+     * head commit ids, or to null if they were removed.*/
+    private final HashMap<String, String> _changes = new HashMap<>();
+}
@@ -0,0 +1,79 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.TreeMap;
+
+/** Tests of the branch store.
+ *  @author Oumar Balde
+ */
+public class RefsTest {
+
+    @Test
+    public void looseAndPackedRefs() throws IOException {
+        File dir = Files.createTempDirectory("refs").toFile();
+        try {
+            Refs refs = new Refs(dir);
+            TreeMap<String, String> expected = new TreeMap<>();
+            for (int i = 0; i < Refs.PACK_LAG + 10; i += 1) {
+                String branch = "branch" + i;
+                refs.put(branch, Utils.sha1(branch));
+                expected.put(branch, Utils.sha1(branch));
+            }
+            refs.save();
+            assertTrue(new File(dir, "packed-refs").isFile());
+            refs.put("master", ID1);
+            refs.put("feature/x.y", ID2);
+            refs.put("..", ID1);
+            refs.put("", ID2);
+            refs.put("caf\u00e9", ID1);
+            refs.remove("branch3");
+            refs.save();
+            expected.put("master", ID1);
+            expected.put("feature/x.y", ID2);
+            expected.put("..", ID1);
+            expected.put("", ID2);
+            expected.put("caf\u00e9", ID1);
+            expected.remove("branch3");
+
+            refs = new Refs(dir);
+            assertEquals(expected, refs.all());
+            assertEquals(Utils.sha1("branch100"), refs.get("branch100"));
+            assertEquals(ID2, refs.get("feature/x.y"));
+            assertEquals(ID2, refs.get(""));
+            assertNull(refs.get("branch3"));
+            assertNull(refs.get("feature"));
+            refs.put("branch100", ID1);
+            refs.remove("master");
+            assertEquals(ID1, refs.get("branch100"));
+            assertNull(refs.get("master"));
+            refs.save();
+            refs = new Refs(dir);
+            assertEquals(ID1, refs.get("branch100"));
+            assertNull(refs.get("master"));
+        } finally {
+            ObjectStoreTest.delete(dir);
+        }
+    }
+
+    @Test
+    public void fileNamesRoundTrip() {
+        for (String branch : new String[] {
+                "", "master", "a/b", "..", ".hidden", "x.tmp", "100%",
+                "caf\u00e9", "sp ace" }) {
+            String fileName = Refs.fileName(branch);
+            assertFalse(fileName.contains("."));
+            assertFalse(fileName.contains("/"));
+            assertEquals(branch, Refs.branchName(fileName));
+        }
+    }
+
+    /** Sample ids. */
+    private static final String
+        ID1 = "0123456789abcdef0123456789abcdef01234567",
+        ID2 = "fedcba9876543210fedcba9876543210fedcba98";
+}
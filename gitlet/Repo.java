@@ -2,186 +2,304 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.TreeMap;
 import java.util.List;
-import java.util.Arrays;
-import gitlet.CommitTree.CommitNode;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Class representing the entire
  * gitlet repository.
+ * The repository is never loaded as a whole: commits are
+ * read from the object store on demand, and each piece of
+ * mutable state (current branch, branches, staging area)
+ * lives in its own file which is only rewritten when it
+ * changes.
  * @author Oumar Balde
  */
 
 
-public class Repo implements Serializable {
+public class Repo {
 
     /** Repo default constructor.
-     * Initializes Instance Objects/Variables,
-     * creates the initial commit and adds it
-     * to the commit tree.
+     * Opens the repository stored in DIR.
+     * @param dir the .gitlet directory
      **/
-    Repo() throws IOException {
-        _commitTree = new CommitTree();
+    Repo(File dir) {
+        _dir = dir;
+        _objects = new ObjectStore(Utils.join(dir, "objects"));
+    }
+
+    /** Creates a new repository in DIR, with the initial
+     * commit on branch master.
+     * @param dir the .gitlet directory
+     * @return the new repository
+     */
+    public static Repo init(File dir) throws IOException {
+        dir.mkdir();
+        Repo repo = new Repo(dir);
+        repo._currBranch = "master";
+        repo._staging = new StagingArea();
         Commit commit0 = new Commit("initial commit");
-        commit0.setSha1(Utils.sha1(Commit.serialized(commit0)));
-        _commitTree.setRoot(new CommitNode(commit0));
-        _commitNodes.put(commit0.getSha1(), _commitTree.getRoot());
-        _commitMessages.put(commit0.getSha1(), "initial commit");
-        _branches.put("master", _commitTree.getRoot());
-        _branchesHead.put("master", _commitTree.getRoot());
-        _currBranch = "master";
+        repo.storeCommit(commit0);
+        repo.refs().put("master", commit0.getSha1());
+        repo._headChanged = true;
+        repo._stagingChanged = true;
+        repo.save();
+        return repo;
+    }
+
+    /** Writes every piece of state modified since this
+     * repository was opened.*/
+    public void save() {
+        if (_headChanged) {
+            Utils.writeContentsAtomically(Utils.join(_dir, "HEAD"),
+                    _currBranch);
+            _headChanged = false;
+        }
+        if (_refs != null) {
+            _refs.save();
+        }
+        if (_stagingChanged) {
+            Utils.writeContentsAtomically(Utils.join(_dir, "staging"),
+                    _staging.encode());
+            _stagingChanged = false;
+        }
+        if (_graph != null) {
+            _graph.save();
+            if (_graph.size() - messages().size()
+                    >= MessageIndex.INDEX_LAG) {
+                messages().update(_graph);
+            }
+        }
+        if (_ancestry != null) {
+            _ancestry.save();
+        }
+        if (_statCache != null) {
+            _statCache.save();
+        }
     }
 
 
     public void simpleLog() {
-        CommitNode headNode = getHEAD();
-        CommitNode node = headNode;
-        while (node != _commitTree.getRoot()) {
-            Commit commit = node.getCommit();
-            System.out.println("===");
-            System.out.println("commit " + commit.getSha1());
-            System.out.println("Date: " + commit.getTime());
-            System.out.println(commit.getMessage());
-            System.out.println();
-            node = headNode.getParent();
-            headNode = node;
-        }
-        CommitNode root = _commitTree.getRoot();
-        Commit commit0 = root.getCommit();
+        CommitGraph graph = graph();
+        AncestorIndex ancestry = ancestry();
+        for (int c = graph.find(headID()); c != -1; c = ancestry.parent(c)) {
+            printLog(c);
+        }
+    }
+
+    /** Prints the log entry of the commit with ordinal C, using
+     * only the commit graph and the ancestor index.
+     * @param c ordinal of the commit
+     */
+    private void printLog(int c) {
+        CommitGraph graph = graph();
         System.out.println("===");
-        System.out.println("commit " + commit0.getSha1());
-        System.out.println("Date: " + commit0.getTime());
-        System.out.println(commit0.getMessage());
+        System.out.println("commit " + graph.id(c));
+        int secondParent = ancestry().secondParent(c);
+        if (secondParent != -1) {
+            int parent = ancestry().parent(c);
+            System.out.println("Merge: " + graph.id(parent).substring(0, 7)
+                    + " " + graph.id(secondParent).substring(0, 7));
+        }
+        System.out.println("Date: " + Commit.formatTime(graph.time(c)));
+        System.out.println(graph.message(c));
         System.out.println();
     }
 
-    public void add(String fileName) {
-        File file = new File(fileName);
-        byte[] blob = Utils.readContents(file);
-        if (_stagedRemove.containsKey(fileName)) {
-            if (Arrays.equals(_stagedRemove.get(fileName), blob)) {
-                _stagedRemove.remove(fileName);
-                return;
-            }
+
+    /** Stages the working files FILENAMES, in order. The files are
+     * hashed and stored in parallel.
+     * @param fileNames names of plain files in the working directory
+     */
+    public void add(List<String> fileNames) {
+        Map<String, String> blobIDs = blobIDs(fileNames,
+                fileName -> statCache().blobID(fileName, _objects));
+        for (String fileName : fileNames) {
+            stage(fileName, blobIDs.get(fileName));
         }
-        Commit currCommit = getHEAD().getCommit();
-        if (currCommit.getFilesTracked().containsKey(fileName)) {
-            byte[] blob1 = currCommit.getFilesTracked().get(fileName);
-            if (Arrays.equals(blob, blob1)) {
+    }
+
+    /** Stages the working file FILENAME, whose contents are stored
+     * as BLOBID.
+     * @param fileName name of a plain file in the working directory
+     * @param blobID id of the file's contents
+     */
+    private void stage(String fileName, String blobID) {
+        TreeMap<String, String> stagedAdd = staging().getAdded();
+        TreeMap<String, String> stagedRemove = staging().getRemoved();
+        _stagingChanged = true;
+        if (stagedRemove.containsKey(fileName)) {
+            if (stagedRemove.get(fileName).equals(blobID)) {
+                stagedRemove.remove(fileName);
                 return;
             }
         }
-        if (_stagedAdd.containsKey(fileName)) {
-            _stagedAdd.replace(fileName, blob);
-        } else {
-            _stagedAdd.put(fileName, blob);
+        Commit currCommit = getHEAD();
+        if (blobID.equals(currCommit.getFile(fileName))) {
+            stagedAdd.remove(fileName);
+            return;
         }
+        stagedAdd.put(fileName, blobID);
     }
 
     public void commit(String msg) throws IOException {
-        if (_stagedAdd.size() == 0 && _stagedRemove.size() == 0) {
+        if (staging().isEmpty()) {
             System.out.println("No changes added to the commit.");
-            System.exit(0);
-        }
-        CommitNode headNode = getHEAD();
-        Commit commit = new Commit(headNode.getCommit(), msg);
-        commit.addFiles(_stagedAdd);
-        commit.removeFiles(_stagedRemove);
-        _stagedAdd = new TreeMap<>();
-        _stagedRemove = new TreeMap<>();
-        commit.setSha1(Utils.sha1(Commit.serialized(commit)));
-        CommitNode node = new CommitNode(commit);
-        _commitNodes.put(commit.getSha1(), node);
-        _commitMessages.put(commit.getSha1(), commit.getMessage());
-        headNode.addChildren(node);
-        node.setParent(headNode);
-        _branches.replace(_currBranch, node);
-        _branchesHead.replace(_currBranch, node);
+            Main.exit();
+        }
+        makeCommit(new Commit(getHEAD(), msg));
+    }
+
+    /** Applies the staged changes to COMMIT, a new child of the
+     * Head commit, stores it and makes it the new Head.
+     * @param commit to be made
+     */
+    private void makeCommit(Commit commit) {
+        commit.addFiles(staging().getAdded());
+        commit.removeFiles(staging().getRemoved());
+        commit.writeTree(_objects);
+        staging().clear();
+        _stagingChanged = true;
+        storeCommit(commit);
+        refs().put(currBranch(), commit.getSha1());
     }
 
     public void remove(String fileName) {
-        CommitNode headNode = getHEAD();
-        if (!_stagedAdd.containsKey(fileName)
-                &&
-                !headNode.getCommit().getFilesTracked().containsKey(fileName)) {
+        String blobID = getHEAD().getFile(fileName);
+        TreeMap<String, String> stagedAdd = staging().getAdded();
+        if (!stagedAdd.containsKey(fileName) && blobID == null) {
             System.out.println("No reason to remove the file.");
-            System.exit(0);
+            Main.exit();
         }
-        if (_stagedAdd.containsKey(fileName)) {
-            _stagedAdd.remove(fileName);
+        _stagingChanged = true;
+        if (stagedAdd.containsKey(fileName)) {
+            stagedAdd.remove(fileName);
         }
-        if (headNode.getCommit().getFilesTracked().containsKey(fileName)) {
-            File file = new File(fileName);
-            byte[] blob = headNode.getCommit().getFilesTracked().get(fileName);
-            _stagedRemove.put(fileName, blob);
-            if (file.exists()) {
-                file.delete();
-            }
+        if (blobID != null) {
+            staging().getRemoved().put(fileName, blobID);
+            deleteWorkingFile(fileName);
         }
     }
 
     public void globalLog() {
-        for (CommitNode node : commitNodes().values()) {
-            Commit commit = node.getCommit();
-            System.out.println("===");
-            System.out.println("commit " + commit.getSha1());
-            System.out.println("Date: " + commit.getTime());
-            System.out.println(commit.getMessage());
-            System.out.println();
+        for (int c = 0; c < graph().size(); c += 1) {
+            printLog(c);
         }
     }
 
     public void find(String msg) {
-        String result = "";
-        for (String commitID : _commitMessages.keySet()) {
-            if (_commitMessages.get(commitID).equals(msg)) {
-                result += commitID + "\n";
+        find(MessageIndex.Query.EXACT, msg);
+    }
+
+    /** Prints the ids of the commits whose messages match a query,
+     * oldest first, as they are found. Only the commits listed by
+     * the message index (and those made since it was last written)
+     * are examined.
+     * @param kind kind of query
+     * @param text the text searched for
+     */
+    public void find(MessageIndex.Query kind, String text) {
+        CommitGraph graph = graph();
+        MessageIndex index = messages();
+        boolean found = false;
+        for (int c : index.candidates(kind, text)) {
+            if (kind.matches(text, graph.message(c))) {
+                System.out.println(graph.id(c));
+                found = true;
+            }
+        }
+        for (int c = index.size(); c < graph.size(); c += 1) {
+            if (kind.matches(text, graph.message(c))) {
+                System.out.println(graph.id(c));
+                found = true;
             }
         }
-        if (result.equals("")) {
+        if (!found) {
             System.out.println("Found no commit with that message.");
-            System.exit(0);
+            Main.exit();
         }
-        System.out.println(result);
+        System.out.println();
+    }
+
+    /** Moves every committed object into new packs, storing the
+     * versions of each file (and of each directory's tree) as deltas
+     * against the next newer version, and reports the space saved.
+     * Staged blobs, and blobs too large to pack, are left loose.
+     */
+    public void repack() {
+        CommitGraph graph = graph();
+        ArrayList<List<String>> groups = new ArrayList<>();
+        LinkedHashMap<String, List<String>> versions = new LinkedHashMap<>();
+        HashSet<String> seen = new HashSet<>();
+        for (int c = graph.size() - 1; c >= 0; c -= 1) {
+            String id = graph.id(c);
+            groups.add(List.of(id));
+            Tree.collect(_objects, getCommit(id).getTree(), "", seen,
+                    versions);
+        }
+        groups.addAll(versions.values());
+        int size = 0, deltas = 0;
+        long packBytes = 0, objectBytes = 0;
+        for (Pack pack : _objects.repack(groups)) {
+            size += pack.size();
+            deltas += pack.deltas();
+            packBytes += pack.packBytes();
+            objectBytes += pack.objectBytes();
+        }
+        System.out.printf("Packed %d objects, %d as deltas, into %d bytes"
+                + " (%d unpacked).%n", size, deltas, packBytes, objectBytes);
     }
 
     public void status() {
-        String branches = "";
-        for (String branch : _branches.keySet()) {
-            if (branch.equals(_currBranch)) {
-                branches += "*";
+        StringBuilder branches = new StringBuilder();
+        for (String branch : branches().keySet()) {
+            if (branch.equals(currBranch())) {
+                branches.append("*");
             }
-            branches += branch + "\n";
+            branches.append(branch).append("\n");
         }
+        TreeMap<String, String> stagedAdd = staging().getAdded();
+        TreeMap<String, String> stagedRemove = staging().getRemoved();
         String stagedFiles = "";
-        for (String fileName : _stagedAdd.keySet()) {
+        for (String fileName : stagedAdd.keySet()) {
             stagedFiles += fileName + "\n";
         }
         String removedFiles = "";
-        for (String fileName : _stagedRemove.keySet()) {
+        for (String fileName : stagedRemove.keySet()) {
             removedFiles += fileName + "\n";
         }
         String modif = "";
-        List<String> fileNames = Utils.plainFilenamesIn(_workingDirectory);
-        Commit currCommit = getHEAD().getCommit();
-        TreeMap<String, byte[]> trackedFiles = currCommit.getFilesTracked();
+        List<String> fileNames = workingFiles();
+        HashSet<String> present = new HashSet<>(fileNames);
+        statCache().retain(present);
+        Commit currCommit = getHEAD();
+        TreeMap<String, String> trackedFiles = currCommit.getFilesTracked();
+        Map<String, String> blobIDs = workingBlobIDs(trackedFiles, present);
         for (String fileName : trackedFiles.keySet()) {
-            if (fileNames.contains(fileName)) {
-                byte[] blob = Utils.readContents(new File(fileName));
-                if (!Arrays.equals(trackedFiles.get(fileName), blob)) {
+            if (present.contains(fileName)) {
+                String blobID = blobIDs.get(fileName);
+                if (!trackedFiles.get(fileName).equals(blobID)) {
                     modif += fileName + " (modified)\n";
                 }
-            } else if (!fileNames.contains(fileName)
-                    && !_stagedRemove.containsKey(fileName)) {
+            } else if (!stagedRemove.containsKey(fileName)) {
                 modif += fileName + " (deleted)\n";
             }
         }
         String untracked = "";
         for (String fileName : fileNames) {
-            if (!_stagedAdd.containsKey(fileName)
+            if (!stagedAdd.containsKey(fileName)
                     && !trackedFiles.containsKey(fileName)) {
                 untracked += fileName + "\n";
             }
@@ -204,267 +322,657 @@ public class Repo implements Serializable {
         } else if (args.length == 4) {
             if (!args[2].equals("--")) {
                 System.out.println("Incorrect operands.");
-                System.exit(0);
+                Main.exit();
             }
             checkout2(args[1], args[3]);
         } else {
             if (!args[1].equals("--")) {
                 System.out.println("Incorrect operands.");
-                System.exit(0);
+                Main.exit();
             }
             checkout1(args[2]);
         }
     }
 
     public void checkout1(String fileName) throws IOException {
-        Commit headCommit = getHEAD().getCommit();
-        if (!headCommit.getFilesTracked().containsKey(fileName)) {
+        String blobID = getHEAD().getFile(fileName);
+        if (blobID == null) {
             System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            Main.exit();
         } else {
-            File file = new File(fileName);
-            if (!file.exists()) {
-                file.createNewFile();
-                Utils.writeContents(file,
-                        headCommit.getFilesTracked().get(fileName));
-            } else {
-                Main.resetFile(file);
-                Utils.writeContents(file,
-                        headCommit.getFilesTracked().get(fileName));
-            }
+            _objects.copyTo(blobID, new File(fileName));
         }
     }
 
     public void checkout2(String commitID, String fileName) throws IOException {
-        if (!commitNodes().containsKey(commitID)) {
+        commitID = resolveID(commitID);
+        if (commitID == null) {
             System.out.println("No commit with that id exists.");
-            System.exit(0);
+            Main.exit();
         } else {
-            Commit commit = commitNodes().get(commitID).getCommit();
-            if (!commit.getFilesTracked().containsKey(fileName)) {
+            String blobID = getCommit(commitID).getFile(fileName);
+            if (blobID == null) {
                 System.out.println("File does not exist in that commit.");
-                System.exit(0);
+                Main.exit();
             } else {
-                File file = new File(fileName);
-                if (!file.exists()) {
-                    file.createNewFile();
-                    Utils.writeContents(file,
-                            commit.getFilesTracked().get(fileName));
-                } else {
-                    Main.resetFile(file);
-                    Utils.writeContents(file,
-                            commit.getFilesTracked().get(fileName));
-                }
+                _objects.copyTo(blobID, new File(fileName));
             }
         }
     }
 
     public void checkout3(String branch) throws IOException {
-        if (!_branches.containsKey(branch)) {
+        String commitID = refs().get(branch);
+        if (commitID == null) {
             System.out.println("No such branch exists.");
-            System.exit(0);
-        } else if (branch.equals(_currBranch)) {
+            Main.exit();
+        } else if (branch.equals(currBranch())) {
             System.out.println("No need to checkout the current branch.");
-            System.exit(0);
-        }
-        Commit checkoutCommit = _branchesHead.get(branch).getCommit();
-        String commitID = checkoutCommit.getSha1();
-        TreeMap<String, byte[]> checkoutTracked =
-                checkoutCommit.getFilesTracked();
-        TreeMap<String, byte[]> currTracked =
-                _branches.get(_currBranch).getCommit().getFilesTracked();
-        List<String> fileNames = Utils.plainFilenamesIn(_workingDirectory);
-        for (String fileName : checkoutTracked.keySet()) {
-            if (fileNames.contains(fileName)) {
-                byte[] blob = Utils.readContents(new File(fileName));
-                if (untrackedCurrBranch(fileName, blob)) {
-                    System.out.println("There is an untracked "
-                            + "file in the way;"
-                            + " delete it, or add and commit it first.");
-                    System.exit(0);
-                }
+            Main.exit();
+        }
+        checkoutFiles(getCommit(commitID));
+        staging().clear();
+        _stagingChanged = true;
+        _currBranch = branch;
+        _headChanged = true;
+    }
+
+    /** Makes the working files tracked by the Head commit those
+     * tracked by TARGET. Only the files whose blob ids differ between
+     * the two commits are looked at, found by comparing their trees,
+     * so files the commits share are left as they are. Of those, the
+     * files tracked by the Head commit but not by TARGET are deleted,
+     * and the files whose contents differ from TARGET's are written,
+     * in parallel. Nothing is changed if an untracked file would be
+     * overwritten.
+     * @param target commit to check out
+     */
+    private void checkoutFiles(Commit target) {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Tree.diff(_objects, getHEAD().getTree(), target.getTree(), "",
+                changes);
+        TreeMap<String, String> targetFiles = new TreeMap<>();
+        for (Map.Entry<String, String[]> entry : changes.entrySet()) {
+            if (entry.getValue()[1] != null) {
+                targetFiles.put(entry.getKey(), entry.getValue()[1]);
             }
-            checkout2(commitID, fileName);
         }
-        for (String fileName : currTracked.keySet()) {
-            if (!checkoutTracked.containsKey(fileName)) {
-                File file = new File(fileName);
-                if (file.exists()) {
-                    file.delete();
+        Set<String> present = presentFiles(targetFiles.keySet());
+        Map<String, String> workingIDs =
+                workingBlobIDs(targetFiles, present);
+        ArrayList<String> blobIDs = new ArrayList<>();
+        ArrayList<File> toWrite = new ArrayList<>();
+        for (Map.Entry<String, String> entry : targetFiles.entrySet()) {
+            String fileName = entry.getKey();
+            if (present.contains(fileName)) {
+                String blobID = workingIDs.get(fileName);
+                if (untrackedCurrBranch(fileName, blobID)) {
+                    System.out.println("There is an untracked file in the way;"
+                           + " delete it, or add and commit it first.");
+                    Main.exit();
+                }
+                if (blobID.equals(entry.getValue())) {
+                    continue;
                 }
             }
+            blobIDs.add(entry.getValue());
+            toWrite.add(new File(fileName));
         }
-        _stagedRemove = new TreeMap<>();
-        _stagedAdd = new TreeMap<>();
-        _currBranch = branch;
+        for (Map.Entry<String, String[]> entry : changes.entrySet()) {
+            if (entry.getValue()[1] == null) {
+                deleteWorkingFile(entry.getKey());
+            }
+        }
+        _objects.copyAll(blobIDs, toWrite, ObjectStore.WORKERS);
     }
 
-    public boolean untrackedCurrBranch(String fileName, byte[] blob) {
-        CommitNode currentBranch = _branches.get(_currBranch);
-        CommitNode copy = currentBranch;
-        while (copy != null) {
-            if (copy.getCommit().getFilesTracked().containsKey(fileName)) {
-                byte[] blob1 = copy.getCommit().getFilesTracked().get(fileName);
-                if (Arrays.equals(blob, blob1)) {
-                    return false;
-                }
+    /** Deletes the working file at PATH, if any, and then each
+     * directory on its path that it leaves empty.
+     * @param path of a working file
+     */
+    private void deleteWorkingFile(String path) {
+        File file = new File(path);
+        file.delete();
+        File dir = file.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    public boolean untrackedCurrBranch(String fileName, String blobID) {
+        String id = headID();
+        while (id != null) {
+            Commit commit = getCommit(id);
+            if (blobID.equals(commit.getFile(fileName))) {
+                return false;
             }
-            copy = copy.getParent();
+            id = commit.getParent();
         }
         return true;
     }
 
 
     public void branch(String branch) {
-        if (_branches.containsKey(branch)) {
+        if (refs().get(branch) != null) {
             System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            Main.exit();
         }
-        _branches.put(branch, getHEAD());
-        _branchesHead.put(branch, getHEAD());
+        refs().put(branch, headID());
     }
 
     public void removeBranch(String branch) {
-        if (!_branches.containsKey(branch)) {
+        if (refs().get(branch) == null) {
             System.out.println("A branch with that name does not exist.");
-            System.exit(0);
-        } else if (branch.equals(_currBranch)) {
+            Main.exit();
+        } else if (branch.equals(currBranch())) {
             System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            Main.exit();
         }
-        _branches.remove(branch);
-        _branchesHead.remove(branch);
+        refs().remove(branch);
     }
 
     public void reset(String commitID) throws IOException {
-        if (!commitNodes().containsKey(commitID)) {
+        commitID = resolveID(commitID);
+        if (commitID == null) {
             System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        CommitNode node = _commitNodes.get(commitID);
-        Commit commit = node.getCommit();
-        TreeMap<String, byte[]> commitFiles = commit.getFilesTracked();
-        TreeMap<String, byte[]> currTracked =
-                _branches.get(_currBranch).getCommit().getFilesTracked();
-        List<String> fileNames = Utils.plainFilenamesIn(_workingDirectory);
-        for (String fileName : commitFiles.keySet()) {
-            if (fileNames.contains(fileName)) {
-                byte[] blob = Utils.readContents(new File(fileName));
-                if (untrackedCurrBranch(fileName, blob)) {
-                    System.out.println("There is an untracked file in the way;"
-                           + " delete it, or add and commit it first.");
-                    System.exit(0);
-                }
-            }
-            checkout2(commitID, fileName);
+            Main.exit();
         }
-        for (String fileName : currTracked.keySet()) {
-            if (!commitFiles.containsKey(fileName)) {
-                File file = new File(fileName);
-                if (file.exists()) {
-                    file.delete();
-                }
-            }
-        }
-        _stagedAdd = new TreeMap<>();
-        _stagedRemove = new TreeMap<>();
-        _branchesHead.replace(_currBranch, node);
+        checkoutFiles(getCommit(commitID));
+        staging().clear();
+        _stagingChanged = true;
+        refs().put(currBranch(), commitID);
     }
 
 
     public void merge(String branch) throws IOException {
-        if (_stagedRemove.size() != 0 || _stagedRemove.size() != 0) {
+        if (!staging().isEmpty()) {
             System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            Main.exit();
         }
-        if (!_branches.containsKey(branch)) {
+        if (refs().get(branch) == null) {
             System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            Main.exit();
         }
-        if (branch.equals(_currBranch)) {
+        if (branch.equals(currBranch())) {
             System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
-        }
-        CommitNode splitPoint;
-        CommitNode currNode = _branches.get(_currBranch);
-        CommitNode currNodeCopy = currNode;
-        CommitNode givenNode = _branches.get(branch);
-        CommitNode givenNodeCopy = givenNode;
-        if (currNode == givenNode) {
+            Main.exit();
+        }
+        String currID = headID();
+        String givenID = refs().get(branch);
+        if (currID.equals(givenID)) {
             System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            Main.exit();
+        }
+        String splitID = splitPoint(currID, givenID);
+        if (specialSplit1(splitID, currID, branch)) {
+            return;
+        }
+        specialSplit2(splitID, givenID);
+        Commit split = getCommit(splitID);
+        Commit curr = getCommit(currID);
+        Commit given = getCommit(givenID);
+        TreeMap<String, Integer> actions = mergeActions(split, curr, given);
+        for (String fileName : actions.keySet()) {
+            if (new File(fileName).exists()
+                    && curr.getFile(fileName) == null) {
+                System.out.println("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+                Main.exit();
+            }
+        }
+        boolean conflict = false;
+        for (String fileName : actions.keySet()) {
+            String givenBlob = given.getFile(fileName);
+            File file = new File(fileName);
+            switch (actions.get(fileName)) {
+            case TAKE_GIVEN:
+                _objects.copyTo(givenBlob, file);
+                staging().getAdded().put(fileName, givenBlob);
+                break;
+            case DELETE:
+                deleteWorkingFile(fileName);
+                staging().getRemoved().put(fileName,
+                        curr.getFile(fileName));
+                break;
+            default:
+                ThreeWayMerge merged = new ThreeWayMerge(
+                        blob(split.getFile(fileName)),
+                        blob(curr.getFile(fileName)),
+                        blob(givenBlob));
+                conflict |= merged.hasConflicts();
+                byte[] contents = merged.result();
+                file.getAbsoluteFile().getParentFile().mkdirs();
+                Utils.writeContents(file, contents);
+                staging().getAdded().put(fileName, _objects.put(contents));
+                break;
+            }
+        }
+        makeCommit(new Commit(curr, given, "Merged " + branch
+                + " into " + currBranch() + "."));
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
         }
-        specialSplit1(currNode, givenNode, branch);
-        specialSplit2(currNode, givenNode);
     }
 
-    public void specialSplit1(CommitNode node1, CommitNode node2, String branch)
-            throws IOException {
-        if (!node1.hasChildren()) {
-            if (node1 == node2) {
-                checkout3(branch);
-                System.out.println("Current branch fast-forwarded.");
-                System.exit(0);
+    /** Decides how merging GIVEN into CURR, whose split point is
+     * SPLIT, changes each file: a file changed only in the given
+     * commit is taken from it (or deleted), and a file changed
+     * differently in both is merged line by line. Files that
+     * keep their current version are left out. Only the files
+     * changed in the given commit are looked at, found by
+     * comparing its tree with the split point's.
+     * @param split split point
+     * @param curr current head
+     * @param given head of the merged branch
+     * @return mapping of file names to TAKE_GIVEN, DELETE or MERGE
+     */
+    private TreeMap<String, Integer> mergeActions(Commit split, Commit curr,
+                                                  Commit given) {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Tree.diff(_objects, split.getTree(), given.getTree(), "", changes);
+        TreeMap<String, Integer> actions = new TreeMap<>();
+        for (Map.Entry<String, String[]> entry : changes.entrySet()) {
+            String fileName = entry.getKey();
+            String s = entry.getValue()[0];
+            String c = curr.getFile(fileName);
+            String g = entry.getValue()[1];
+            if (Objects.equals(c, g)) {
+                continue;
+            } else if (Objects.equals(s, c)) {
+                actions.put(fileName, g == null ? DELETE : TAKE_GIVEN);
+            } else {
+                actions.put(fileName, MERGE);
             }
-            return;
-        } else if (node1 == node2) {
+        }
+        return actions;
+    }
+
+    /** Fast-forwards the current branch to BRANCH if the split
+     * point SPLITID is the current head CURRID.
+     * @param splitID id of the split point
+     * @param currID id of the current head
+     * @param branch name of the given branch
+     * @return true iff the merge is done
+     */
+    public boolean specialSplit1(String splitID, String currID,
+                                 String branch) throws IOException {
+        if (splitID.equals(currID)) {
             checkout3(branch);
             System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
-        } else {
-            for (CommitNode node : node1.getChildren()) {
-                specialSplit1(node, node2, branch);
+            return true;
+        }
+        return false;
+    }
+
+    public void specialSplit2(String splitID, String givenID) {
+        if (splitID.equals(givenID)) {
+            System.out.println("Given branch is "
+                    + "an ancestor of the current branch.");
+            Main.exit();
+        }
+    }
+
+    /** Finds the split point of two commits: a best common
+     * ancestor of ID1 and ID2, found with the ancestor index
+     * without reading any commit.
+     * @param id1 id of the first commit
+     * @param id2 id of the second commit
+     * @return id of the split point
+     */
+    public String splitPoint(String id1, String id2) {
+        int base = ancestry().mergeBase(ordinal(id1), ordinal(id2));
+        return graph().id(base);
+    }
+
+    /** Reads a blob.
+     * @param blobID id of the blob, or null
+     * @return contents of the blob, or null if BLOBID is null
+     */
+    private byte[] blob(String blobID) {
+        return blobID == null ? null : _objects.get(blobID);
+    }
+
+    /** Writes COMMIT to the object store, sets its id and
+     * records it in the commit journal, unless an identical
+     * commit already exists.
+     * @param commit to be stored
+     */
+    private void storeCommit(Commit commit) {
+        byte[] contents = commit.encode();
+        String id = Utils.sha1(contents);
+        commit.setSha1(id);
+        _commits.put(id, commit);
+        if (_objects.contains(id)) {
+            return;
+        }
+        _objects.put(contents);
+        Utils.appendContents(Utils.join(_dir, "commits"), id, "\n");
+        if (_graph != null) {
+            _graph.add(commit);
+            if (_ancestry != null) {
+                addAncestry(commit);
+            }
+        }
+    }
+
+    /** Accessor method that gets a commit, reading it from the
+     * object store the first time it is needed.
+     * @param commitID id of the commit
+     * @return the commit
+     */
+    public Commit getCommit(String commitID) {
+        Commit commit = _commits.get(commitID);
+        if (commit == null) {
+            commit = Commit.decode(commitID, _objects.get(commitID),
+                    _objects);
+            _commits.put(commitID, commit);
+        }
+        return commit;
+    }
+
+    /** Resolves a full or abbreviated commit id. Exits with a
+     * message if the abbreviation matches several commits.
+     * @param prefix a prefix of a commit id
+     * @return the full id, or null if no commit matches
+     */
+    public String resolveID(String prefix) {
+        if (!prefix.matches("[0-9a-f]{1," + Utils.UID_LENGTH + "}")) {
+            return null;
+        } else if (prefix.length() == Utils.UID_LENGTH) {
+            int c = graph().find(prefix);
+            return c == -1 ? null : prefix;
+        }
+        List<Integer> matches = graph().matches(prefix, 2);
+        if (matches.size() > 1) {
+            System.out.println("Ambiguous commit id.");
+            Main.exit();
+        }
+        return matches.isEmpty() ? null : graph().id(matches.get(0));
+    }
+
+    /** Accessor method that gets the commit graph, first adding
+     * any commit recorded in the journal since it was last saved.
+     * @return commit graph
+     */
+    public CommitGraph graph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(Utils.join(_dir, "commit-graph"),
+                    Utils.join(_dir, "commit-messages"),
+                    Utils.join(_dir, "commit-index"));
+            for (String id : journal(_graph.size())) {
+                _graph.add(getCommit(id));
+            }
+        }
+        return _graph;
+    }
+
+    /** Reads the commit journal, skipping its first FROM entries.
+     * Entries have a fixed width, so the skipped part is not read.
+     * @param from number of entries to skip
+     * @return ids of the remaining commits, oldest first
+     */
+    private ArrayList<String> journal(int from) {
+        ArrayList<String> ids = new ArrayList<>();
+        File file = Utils.join(_dir, "commits");
+        try (RandomAccessFile journal = new RandomAccessFile(file, "r")) {
+            long start = (long) from * JOURNAL_ENTRY;
+            if (start >= journal.length()) {
+                return ids;
+            }
+            byte[] tail = new byte[(int) (journal.length() - start)];
+            journal.seek(start);
+            journal.readFully(tail);
+            for (String id : new String(tail, StandardCharsets.US_ASCII)
+                    .split("\n")) {
+                if (!id.isEmpty()) {
+                    ids.add(id);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ids;
+    }
+
+    /** Accessor method that gets the ancestor index, first
+     * indexing any commit made since it was last saved.
+     * @return ancestor index
+     */
+    public AncestorIndex ancestry() {
+        if (_ancestry == null) {
+            _ancestry = new AncestorIndex(Utils.join(_dir, "ancestry"));
+            for (int c = _ancestry.size(); c < graph().size(); c += 1) {
+                addAncestry(getCommit(graph().id(c)));
+            }
+        }
+        return _ancestry;
+    }
+
+    /** Accessor method that gets the index of commit messages.
+     * @return message index
+     */
+    public MessageIndex messages() {
+        if (_messages == null) {
+            _messages = new MessageIndex(Utils.join(_dir, "message-index"));
+        }
+        return _messages;
+    }
+
+    /** Adds COMMIT, the next commit in the graph, to the
+     * ancestor index.
+     * @param commit a stored commit
+     */
+    private void addAncestry(Commit commit) {
+        _ancestry.add(ordinal(commit.getParent()),
+                ordinal(commit.getSecondParent()));
+    }
+
+    /** Gets the ordinal of a commit.
+     * @param id of the commit, or null
+     * @return ordinal of the commit, or -1 if ID is null
+     */
+    private int ordinal(String id) {
+        return id == null ? -1 : graph().find(id);
+    }
+
+    /** Accessor method that gets the current branch.
+     * @return name of the current branch
+     */
+    public String currBranch() {
+        if (_currBranch == null) {
+            _currBranch =
+                    Utils.readContentsAsString(Utils.join(_dir, "HEAD"));
+        }
+        return _currBranch;
+    }
+
+    /** Accessor method that gets the branches.
+     * @return mapping of branch names to head commit ids
+     */
+    public TreeMap<String, String> branches() {
+        return refs().all();
+    }
+
+    /** Accessor method that gets the store of the branches.
+     * @return branch store
+     */
+    public Refs refs() {
+        if (_refs == null) {
+            _refs = new Refs(_dir);
+        }
+        return _refs;
+    }
+
+    /** Accessor method that gets the staging area.
+     * @return staging area
+     */
+    public StagingArea staging() {
+        if (_staging == null) {
+            _staging = StagingArea.decode(
+                    Utils.readContents(Utils.join(_dir, "staging")));
+        }
+        return _staging;
+    }
+
+    /** Accessor method that gets the stat cache of the
+     * working files.
+     * @return stat cache
+     */
+    public StatCache statCache() {
+        if (_statCache == null) {
+            _statCache = new StatCache(Utils.join(_dir, "stat-cache"));
+        }
+        return _statCache;
+    }
+
+    /** Makes this repository learn about the working directory
+     * from WATCHER instead of listing it and reading its files'
+     * metadata.
+     * @param watcher watcher of the working directory
+     */
+    public void setWatcher(TreeWatcher watcher) {
+        _watcher = watcher;
+    }
+
+    /** Accessor method that gets the plain files of the working
+     * directory and its subdirectories.
+     * @return paths of the files, in sorted order
+     */
+    private List<String> workingFiles() {
+        if (_watcher == null) {
+            return Utils.plainFilePathsIn(_workingDirectory,
+                    Main.GITLETDIR.getName());
+        }
+        _watcher.sync();
+        return new ArrayList<>(_watcher.fileNames());
+    }
+
+    /** Accessor method that gets the paths among PATHS that are
+     * plain working files, without listing the working directory.
+     * @param paths paths of possible working files
+     * @return the paths of the files that exist
+     */
+    private Set<String> presentFiles(Collection<String> paths) {
+        HashSet<String> present = new HashSet<>();
+        if (_watcher != null) {
+            _watcher.sync();
+        }
+        for (String path : paths) {
+            if (_watcher == null ? new File(path).isFile()
+                    : _watcher.fileNames().contains(path)) {
+                present.add(path);
             }
         }
+        return present;
+    }
+
+    /** Accessor method that gets the blob id of the working file
+     * FILENAME, without reading the file or its metadata if the
+     * watcher has seen no change to it since it was last hashed.
+     * @param fileName name of a plain file in the working directory
+     * @return SHA-1 hash of the file's contents
+     */
+    private String workingBlobID(String fileName) {
+        if (_watcher == null) {
+            return statCache().blobID(fileName);
+        }
+        String blobID = _watcher.cleanBlobID(fileName);
+        if (blobID == null) {
+            blobID = statCache().blobID(fileName);
+            _watcher.markClean(fileName, blobID);
+        }
+        return blobID;
     }
 
-    public void specialSplit2(CommitNode currNode, CommitNode givenNode) {
-        CommitNode currNodeCopy = currNode;
-        while (currNodeCopy.hasParent()) {
-            if (currNodeCopy == givenNode) {
-                System.out.println("Given branch is "
-                        + "an ancestor of the current branch.");
-                System.exit(0);
+    /** Accessor method that gets the blob ids of the working files
+     * tracked in TRACKED that are in PRESENT, computed in parallel.
+     * @param tracked maps file names to blob ids
+     * @param present names of the working files
+     * @return maps the file names to the blob ids of their contents
+     */
+    private Map<String, String> workingBlobIDs(Map<String, String> tracked,
+                                               Set<String> present) {
+        ArrayList<String> fileNames = new ArrayList<>();
+        for (String fileName : tracked.keySet()) {
+            if (present.contains(fileName)) {
+                fileNames.add(fileName);
             }
-            currNodeCopy = currNodeCopy.getParent();
         }
+        return blobIDs(fileNames, this::workingBlobID);
     }
 
+    /** Applies HASH to each of FILENAMES, in parallel.
+     * @param fileNames names of working files, possibly repeated
+     * @param hash function from a file name to a blob id
+     * @return maps the file names to their blob ids
+     */
+    private static Map<String, String> blobIDs(List<String> fileNames,
+            Function<String, String> hash) {
+        return fileNames.parallelStream().distinct()
+                .collect(Collectors.toMap(Function.identity(), hash));
+    }
 
-    /** Accessor method that gets the Head Node.
-     * @return Head Node
+    /** Accessor method that gets the object store.
+     * @return object store of this repository
      */
-    public CommitNode getHEAD() {
-        return _branchesHead.get(_currBranch);
+    public ObjectStore objects() {
+        return _objects;
     }
 
-    /** Accessor method that gets the commitNodes.
-     * @return commitNodes
+    /** Accessor method that gets the id of the Head commit.
+     * @return Head commit id
      */
-    public LinkedHashMap<String, CommitNode> commitNodes() {
-        return _commitNodes;
+    public String headID() {
+        return refs().get(currBranch());
     }
+
+    /** Accessor method that gets the Head commit.
+     * @return Head commit
+     */
+    public Commit getHEAD() {
+        return getCommit(headID());
+    }
+
+    /** Merge action: check out the given version of a file.*/
+    private static final int TAKE_GIVEN = 0;
+    /** Merge action: remove a file.*/
+    private static final int DELETE = 1;
+    /** Merge action: merge both versions of a file.*/
+    private static final int MERGE = 2;
+
+    /** Size of an entry of the commit journal: an id and a
+     * newline.*/
+    private static final int JOURNAL_ENTRY = Utils.UID_LENGTH + 1;
+
+
     /** The current working directory.*/
     private File _workingDirectory = new File(".");
-    /** This repository CommitTree.*/
-    private CommitTree _commitTree;
-    /** Current branch.*/
+    /** The .gitlet directory.*/
+    private final File _dir;
+    /** Blob and commit store.*/
+    private final ObjectStore _objects;
+    /** Commits read or created so far, by id.*/
+    private HashMap<String, Commit> _commits = new HashMap<>();
+    /** Commit graph, or null if not opened yet.*/
+    private CommitGraph _graph;
+    /** Message index, or null if not opened yet.*/
+    private MessageIndex _messages;
+    /** Ancestor index, or null if not opened yet.*/
+    private AncestorIndex _ancestry;
+    /** Current branch, or null if not read yet.*/
     private String _currBranch;
-    /** Hashmap of the commit nodes from the commitTree.
-     * The purpose of this hashmap is to make the
-     * lookup of a certain commit node more efficient.*/
-    private LinkedHashMap<String, CommitNode> _commitNodes =
-            new LinkedHashMap<>();
-    /** Hashmap of files staged for adding.*/
-    private TreeMap<String, byte[]> _stagedAdd = new TreeMap<>();
-    /** Hashmap of files staged for removal.*/
-    private TreeMap<String, byte[]> _stagedRemove = new TreeMap<>();
-    /** Hashmap of commitMessages. It maps commit Ids to messages.*/
-    private LinkedHashMap<String, String> _commitMessages =
-            new LinkedHashMap<>();
-    /** Hashmap of Branches. Maps branch names to commit nodes.*/
-    private TreeMap<String, CommitNode> _branches = new TreeMap<>();
-    /** Mapping of branch names with their corresponding Head Node.*/
-    private LinkedHashMap<String, CommitNode> _branchesHead =
-            new LinkedHashMap<>();
+    /** Store of the branches, or null if not opened yet.*/
+    private Refs _refs;
+    /** Files staged for addition and removal, or null if
+     * not read yet.*/
+    private StagingArea _staging;
+    /** Cached blob ids of working files, or null if not
+     * read yet.*/
+    private StatCache _statCache;
+    /** Watcher of the working directory, or null if the directory
+     * is listed instead.*/
+    private TreeWatcher _watcher;
+    /** True iff the current branch must be saved.*/
+    private boolean _headChanged;
+    /** True iff the staging area must be saved.*/
+    private boolean _stagingChanged;
 }
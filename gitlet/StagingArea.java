@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class representing the staging area. It is persisted
+ * in its own file so that staging a file never touches
+ * the commit history, and that file is replaced atomically
+ * so that an interrupted command cannot leave it truncated.
+ * @author Oumar Balde
+ */
+public class StagingArea {
+
+    /** Decodes a staging area written by encode().
+     * @param bytes encoded staging area
+     * @return the staging area
+     */
+    public static StagingArea decode(byte[] bytes) {
+        RecordInput in = new RecordInput(bytes, MAGIC);
+        if (in.version() != VERSION) {
+            throw Utils.error("Unsupported staging format version %d.",
+                    in.version());
+        }
+        StagingArea staging = new StagingArea();
+        readEntries(in, staging._added);
+        readEntries(in, staging._removed);
+        return staging;
+    }
+
+    /** Encodes this staging area in gitlet's binary record format.
+     * @return encoded staging area
+     */
+    public byte[] encode() {
+        RecordOutput out = new RecordOutput(MAGIC, VERSION);
+        writeEntries(out, _added);
+        writeEntries(out, _removed);
+        return out.toByteArray();
+    }
+
+    /** Writes ENTRIES as a count, a path table and blob ids.
+     * @param out record being written
+     * @param entries file names mapped to blob ids
+     */
+    private static void writeEntries(RecordOutput out,
+                                     TreeMap<String, String> entries) {
+        out.writeVarInt(entries.size());
+        out.writePaths(entries.keySet());
+        for (String blobID : entries.values()) {
+            out.writeHash(blobID);
+        }
+    }
+
+    /** Reads entries written by writeEntries into ENTRIES.
+     * @param in record being read
+     * @param entries map to fill
+     */
+    private static void readEntries(RecordInput in,
+                                    Map<String, String> entries) {
+        String[] paths = in.readPaths(in.readVarInt());
+        for (String path : paths) {
+            entries.put(path, in.readHash());
+        }
+    }
+
+    /** Checks whether nothing is staged.
+     * @return true iff no file is staged for addition or removal
+     */
+    public boolean isEmpty() {
+        return _added.isEmpty() && _removed.isEmpty();
+    }
+
+    /** Unstages every file.*/
+    public void clear() {
+        _added.clear();
+        _removed.clear();
+    }
+
+    /** Accessor method that gets the files staged for addition.
+     * @return mapping of file names to blob ids
+     */
+    public TreeMap<String, String> getAdded() {
+        return _added;
+    }
+
+    /** Accessor method that gets the files staged for removal.
+     * @return mapping of file names to blob ids
+     */
+    public TreeMap<String, String> getRemoved() {
+        return _removed;
+    }
+
+    /** Kind of staging records.*/
+    static final String MAGIC = "GLST";
+    /** Current version of the staging record format.*/
+    static final int VERSION = 1;
+
+    /** Files staged for adding. Maps file names to blob ids.*/
+    private TreeMap<String, String> _added = new TreeMap<>();
+    /** Files staged for removal. Maps file names to blob ids.*/
+    private TreeMap<String, String> _removed = new TreeMap<>();
+}
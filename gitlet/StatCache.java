@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the blob ids of working files, keyed by file name and
+ * validated with the file's size, modification time and file key
+ * (the inode on Unix). A file whose metadata is unchanged since it
+ * was last hashed is not read again.
+ * A cached entry is only trusted if the file was last modified
+ * strictly before the second in which the cache was written;
+ * otherwise the file could have been changed again within the same
+ * timestamp tick without its metadata changing ("racy" entries),
+ * so it is hashed anew.
+ * blobID may be called from several threads at once.
+ * @author Oumar Balde
+ */
+public class StatCache {
+
+    /** StatCache constructor. Reads the cache stored in FILE,
+     * if any.
+     * @param file in which the cache is stored
+     */
+    StatCache(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        RecordInput in = new RecordInput(Utils.readContents(file), MAGIC);
+        if (in.version() != VERSION) {
+            return;
+        }
+        _writeTime = in.readLong();
+        String[] paths = in.readPaths(in.readVarInt());
+        for (String path : paths) {
+            Entry entry = new Entry();
+            entry._size = in.readVarLong();
+            entry._mtime = in.readLong();
+            entry._key = in.readLong();
+            entry._blobID = in.readHash();
+            _entries.put(path, entry);
+        }
+    }
+
+    /** Gets the blob id of the working file FILENAME, reading
+     * and hashing the file only if it may have changed since
+     * it was last hashed.
+     * @param fileName name of a plain file in the working directory
+     * @return SHA-1 hash of the file's contents
+     */
+    public String blobID(String fileName) {
+        return blobID(fileName, null);
+    }
+
+    /** Same as blobID(FILENAME), except that when the file has to be
+     * read, its contents are stored in OBJECTS (if non-null).
+     * @param fileName name of a plain file in the working directory
+     * @param objects object store in which to put the contents, or null
+     * @return SHA-1 hash of the file's contents
+     */
+    public String blobID(String fileName, ObjectStore objects) {
+        File file = new File(fileName);
+        Entry stat = stat(file);
+        Entry cached = _entries.get(fileName);
+        if (cached != null && stat != null && cached.sameStat(stat)
+                && stat._mtime < _writeTime
+                && (objects == null || objects.contains(cached._blobID))) {
+            return cached._blobID;
+        }
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        String blobID =
+                objects == null ? ObjectStore.hash(file) : objects.put(file);
+        if (stat != null) {
+            stat._blobID = blobID;
+            _entries.put(fileName, stat);
+            _changed = true;
+        }
+        return blobID;
+    }
+
+    /** Forgets every file whose name is not in FILENAMES.
+     * @param fileNames names of the files still present
+     */
+    public void retain(Collection<String> fileNames) {
+        if (_entries.keySet().retainAll(fileNames)) {
+            _changed = true;
+        }
+    }
+
+    /** Writes the cache back if it changed.*/
+    public void save() {
+        if (!_changed) {
+            return;
+        }
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        _writeTime = now - now % TimeUnit.SECONDS.toNanos(1);
+        RecordOutput out = new RecordOutput(MAGIC, VERSION);
+        out.writeLong(_writeTime);
+        out.writeVarInt(_entries.size());
+        out.writePaths(_entries.keySet());
+        for (Entry entry : _entries.values()) {
+            out.writeVarLong(entry._size);
+            out.writeLong(entry._mtime);
+            out.writeLong(entry._key);
+            out.writeHash(entry._blobID);
+        }
+        Utils.writeContentsAtomically(_file, out.toByteArray());
+        _changed = false;
+    }
+
+    /** Reads the metadata of FILE.
+     * @param file a plain file
+     * @return entry without a blob id, or null if the metadata
+     *         cannot be read
+     */
+    private static Entry stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            Entry entry = new Entry();
+            entry._size = attrs.size();
+            entry._mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            Object key = attrs.fileKey();
+            entry._key = key == null ? 0 : key.hashCode();
+            return entry;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Cached metadata and blob id of a working file.*/
+    private static class Entry {
+        /** Checks whether ENTRY has the same metadata as this one.
+         * @param entry to be compared
+         * @return true iff size, modification time and key match
+         */
+        boolean sameStat(Entry entry) {
+            return _size == entry._size && _mtime == entry._mtime
+                    && _key == entry._key;
+        }
+
+        /** Size of the file in bytes.*/
+        private long _size;
+        /** Modification time of the file, in nanoseconds.*/
+        private long _mtime;
+        /** Hash of the file key (inode) of the file.*/
+        private long _key;
+        /** Blob id of the file's contents.*/
+        private String _blobID;
+    }
+
+    /** Kind of stat cache records.*/
+    static final String MAGIC = "GLSC";
+    /** Current version of the stat cache record format.*/
+    static final int VERSION = 1;
+
+    /** File in which the cache is stored.*/
+    private final File _file;
+    /** Cached entries, by file name.*/
+    private ConcurrentSkipListMap<String, Entry> _entries =
+            new ConcurrentSkipListMap<>();
+    /** Time at which the cache was last written, truncated to
+     * the second, in nanoseconds.*/
+    private long _writeTime;
+    /** True iff the cache must be saved.*/
+    private volatile boolean _changed;
+}
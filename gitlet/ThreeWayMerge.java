@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line-based three-way merge of two versions of a file against
+ * their common ancestor, in the manner of diff3. The hunks that
+ * each side changed relative to the base are computed with Diff;
+ * hunks that only one side touched, or that both sides changed
+ * identically, are merged automatically, and only overlapping
+ * (or adjacent) hunks changed differently are reported as
+ * conflicts, each surrounded by conflict markers.
+ * Lines are compared as bytes (decoded with one character per
+ * byte), so contents in any encoding are merged without being
+ * altered. Binary files (containing a NUL byte) are not merged by
+ * line: if both sides changed them, the whole files conflict.
+ * @author Oumar Balde
+ */
+public class ThreeWayMerge {
+
+    /** ThreeWayMerge constructor. Merges the changes from BASE
+     * to OURS and from BASE to THEIRS. Missing versions (deleted
+     * files) are given as null.
+     * @param base contents of the common ancestor
+     * @param ours contents of the current version
+     * @param theirs contents of the given version
+     */
+    ThreeWayMerge(byte[] base, byte[] ours, byte[] theirs) {
+        _base = lines(base);
+        _ours = lines(ours);
+        _theirs = lines(theirs);
+        if (isBinary(base) || isBinary(ours) || isBinary(theirs)) {
+            conflict(_ours, _theirs);
+        } else {
+            merge();
+        }
+    }
+
+    /** Checks whether some hunks could not be merged.
+     * @return true iff the result contains conflict markers
+     */
+    public boolean hasConflicts() {
+        return _conflicts;
+    }
+
+    /** Accessor method that gets the merged contents.
+     * @return merged contents
+     */
+    public byte[] result() {
+        return _result.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Splits CONTENTS into lines, each keeping its terminating
+     * newline (so that the contents can be rebuilt exactly).
+     * @param contents file contents, or null for a missing file
+     * @return the lines
+     */
+    static List<String> lines(byte[] contents) {
+        ArrayList<String> result = new ArrayList<>();
+        if (contents == null) {
+            return result;
+        }
+        String text = new String(contents, StandardCharsets.ISO_8859_1);
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end == -1 ? text.length() : end + 1;
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Computes the merged contents.*/
+    private void merge() {
+        int[] ours = hunks(_ours);
+        int[] theirs = hunks(_theirs);
+        int i1 = 0, i2 = 0;
+        int delta1 = 0, delta2 = 0;
+        int pos = 0;
+        while (i1 < ours.length || i2 < theirs.length) {
+            boolean first = i2 >= theirs.length
+                    || (i1 < ours.length && ours[i1] <= theirs[i2]);
+            int start = first ? ours[i1] : theirs[i2];
+            int end = start;
+            int oursStart = start + delta1, theirsStart = start + delta2;
+            boolean touched1 = false, touched2 = false;
+            while (true) {
+                if (i1 < ours.length && ours[i1] <= end) {
+                    end = Math.max(end, ours[i1] + ours[i1 + 1]);
+                    delta1 += ours[i1 + 3] - ours[i1 + 1];
+                    touched1 = true;
+                    i1 += 4;
+                } else if (i2 < theirs.length && theirs[i2] <= end) {
+                    end = Math.max(end, theirs[i2] + theirs[i2 + 1]);
+                    delta2 += theirs[i2 + 3] - theirs[i2 + 1];
+                    touched2 = true;
+                    i2 += 4;
+                } else {
+                    break;
+                }
+            }
+            copy(_base, pos, start);
+            List<String> oursPart =
+                    _ours.subList(oursStart, end + delta1);
+            List<String> theirsPart =
+                    _theirs.subList(theirsStart, end + delta2);
+            if (!touched2) {
+                copy(oursPart);
+            } else if (!touched1 || oursPart.equals(theirsPart)) {
+                copy(theirsPart);
+            } else {
+                conflict(oursPart, theirsPart);
+            }
+            pos = end;
+        }
+        copy(_base, pos, _base.size());
+    }
+
+    /** Appends a conflict between OURS and THEIRS to the result.
+     * @param ours lines of the current version
+     * @param theirs lines of the given version
+     */
+    private void conflict(List<String> ours, List<String> theirs) {
+        _conflicts = true;
+        _result.append("<<<<<<< HEAD\n");
+        copyTerminated(ours);
+        _result.append("=======\n");
+        copyTerminated(theirs);
+        _result.append(">>>>>>>\n");
+    }
+
+    /** Checks whether CONTENTS are binary: they contain a NUL byte.
+     * @param contents file contents, or null for a missing file
+     * @return true iff CONTENTS are not merged by line
+     */
+    private static boolean isBinary(byte[] contents) {
+        if (contents != null) {
+            for (byte b : contents) {
+                if (b == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Computes the hunks changing the base into VERSION.
+     * @param version lines of one side
+     * @return hunks, as returned by Diff.diffs()
+     */
+    private int[] hunks(List<String> version) {
+        Diff diff = new Diff();
+        diff.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        diff.setSequences(_base, version);
+        return diff.diffs();
+    }
+
+    /** Appends lines [START .. END - 1] of LINES to the result.
+     * @param lines source
+     * @param start first line
+     * @param end line after the last
+     */
+    private void copy(List<String> lines, int start, int end) {
+        copy(lines.subList(start, end));
+    }
+
+    /** Appends LINES to the result.
+     * @param lines to be appended
+     */
+    private void copy(List<String> lines) {
+        for (String line : lines) {
+            _result.append(line);
+        }
+    }
+
+    /** Appends LINES to the result, making sure the last one ends
+     * with a newline so that a conflict marker can follow it.
+     * @param lines to be appended
+     */
+    private void copyTerminated(List<String> lines) {
+        copy(lines);
+        if (!lines.isEmpty() && !lines.get(lines.size() - 1).endsWith("\n")) {
+            _result.append("\n");
+        }
+    }
+
+    /** Lines of the common ancestor.*/
+    private final List<String> _base;
+    /** Lines of the current version.*/
+    private final List<String> _ours;
+    /** Lines of the given version.*/
+    private final List<String> _theirs;
+    /** Merged contents.*/
+    private final StringBuilder _result = new StringBuilder();
+    /** True iff some hunks conflict.*/
+    private boolean _conflicts;
+}
@@ -0,0 +1,83 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+/** Tests of ThreeWayMerge.
+ *  @author Oumar Balde
+ */
+public class ThreeWayMergeTest {
+
+    /** Return the merge of OURS and THEIRS against BASE. */
+    private static ThreeWayMerge merge(String base, String ours,
+                                       String theirs) {
+        return new ThreeWayMerge(bytes(base), bytes(ours), bytes(theirs));
+    }
+
+    /** Return the UTF-8 bytes of S, or null if S is null. */
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the result of M as a String. */
+    private static String result(ThreeWayMerge m) {
+        return new String(m.result(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void disjointHunksMergeCleanly() {
+        ThreeWayMerge m = merge("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n",
+                                "a\nb\nc\nd\nE\nf\n");
+        assertFalse(m.hasConflicts());
+        assertEquals("A\nb\nc\nd\nE\nf\n", result(m));
+    }
+
+    @Test
+    public void identicalChangesMergeCleanly() {
+        ThreeWayMerge m = merge("a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n");
+        assertFalse(m.hasConflicts());
+        assertEquals("a\nB\nc\n", result(m));
+    }
+
+    @Test
+    public void conflictsOnlyAroundOverlappingHunks() {
+        ThreeWayMerge m = merge("a\nb\nc\nd\ne\n", "a\nX\nc\nd\nE\n",
+                                "a\nY\nc\nd\ne\n");
+        assertTrue(m.hasConflicts());
+        assertEquals("a\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nc\nd\nE\n",
+                     result(m));
+    }
+
+    @Test
+    public void nonUtf8BytesArePreserved() {
+        byte[] base = latin1("caf\u00e9\na\nb\nc\nd\n");
+        ThreeWayMerge m = new ThreeWayMerge(base,
+                latin1("caf\u00e9\nA\nb\nc\nd\n"),
+                latin1("caf\u00e9\na\nb\nc\nD\n"));
+        assertFalse(m.hasConflicts());
+        assertArrayEquals(latin1("caf\u00e9\nA\nb\nc\nD\n"), m.result());
+    }
+
+    @Test
+    public void binaryFilesConflictWhole() {
+        ThreeWayMerge m = new ThreeWayMerge(latin1("a\n\0b\nc\nd\n"),
+                latin1("A\n\0b\nc\nd\n"), latin1("a\n\0b\nc\nD\n"));
+        assertTrue(m.hasConflicts());
+        assertArrayEquals(latin1("<<<<<<< HEAD\nA\n\0b\nc\nd\n=======\n"
+                + "a\n\0b\nc\nD\n>>>>>>>\n"), m.result());
+    }
+
+    /** Return the ISO-8859-1 bytes of S. */
+    private static byte[] latin1(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void deletedAgainstModified() {
+        ThreeWayMerge m = merge("a\n", null, "b");
+        assertTrue(m.hasConflicts());
+        assertEquals("<<<<<<< HEAD\n=======\nb\n>>>>>>>\n", result(m));
+    }
+}
@@ -0,0 +1,301 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Class representing a directory of a commit: the blob ids of the
+ * files it contains and the ids of the trees of its subdirectories.
+ * Trees are stored in the object store like blobs, so a tree's id
+ * is the hash of its contents, and two trees with the same id hold
+ * exactly the same files. Operations on whole commits (writing a new
+ * commit's trees, diffing two commits) skip every pair of subtrees
+ * with equal ids, so their cost is proportional to the part of the
+ * tree that changed.
+ * Trees are never modified once built, so the trees of a commit and
+ * of its parent form a persistent map of their files: only the
+ * directories on changed paths are copied, and every other tree is
+ * shared, both in the store and in memory (through a cache of the
+ * trees read or written recently).
+ * Paths are relative to the working directory, with components
+ * separated by '/'.
+ * @author Oumar Balde
+ */
+public class Tree {
+
+    /** Tree constructor. Creates an empty tree.*/
+    Tree() {
+    }
+
+    /** Tree constructor used when reading a stored tree.
+     * @param bytes encoded tree, as produced by encode()
+     */
+    private Tree(byte[] bytes) {
+        RecordInput in = new RecordInput(bytes, MAGIC);
+        if (in.version() != VERSION) {
+            throw Utils.error("Unsupported tree format version %d.",
+                    in.version());
+        }
+        readEntries(in, _files);
+        readEntries(in, _dirs);
+    }
+
+    /** Reads the tree with the given ID.
+     * @param objects object store holding the tree
+     * @param id of the tree
+     * @return the tree
+     */
+    static Tree read(ObjectStore objects, String id) {
+        if (id.equals(EMPTY)) {
+            return new Tree();
+        }
+        synchronized (CACHE) {
+            Tree tree = CACHE.get(id);
+            if (tree != null) {
+                return tree;
+            }
+        }
+        Tree tree = new Tree(objects.get(id));
+        synchronized (CACHE) {
+            CACHE.put(id, tree);
+        }
+        return tree;
+    }
+
+    /** Encodes this tree: its files and its subdirectories, each as
+     * front-coded sorted names followed by their ids.
+     * @return encoded tree
+     */
+    public byte[] encode() {
+        RecordOutput out = new RecordOutput(MAGIC, VERSION);
+        writeEntries(out, _files);
+        writeEntries(out, _dirs);
+        return out.toByteArray();
+    }
+
+    /** Gets the blob id of the file at PATH in the tree TREEID.
+     * @param objects object store holding the trees
+     * @param treeID id of the root tree
+     * @param path of a file
+     * @return blob id of the file, or null if there is no such file
+     */
+    static String lookup(ObjectStore objects, String treeID, String path) {
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', start)) {
+            treeID = read(objects, treeID)._dirs.get(
+                    path.substring(start, slash));
+            if (treeID == null) {
+                return null;
+            }
+            start = slash + 1;
+        }
+        return read(objects, treeID)._files.get(path.substring(start));
+    }
+
+    /** Adds every file of the tree TREEID to FILES.
+     * @param objects object store holding the trees
+     * @param treeID id of the tree
+     * @param prefix path of the tree's directory, followed by '/',
+     *        or "" for the root
+     * @param files maps paths to blob ids
+     */
+    static void flatten(ObjectStore objects, String treeID, String prefix,
+                        Map<String, String> files) {
+        Tree tree = read(objects, treeID);
+        for (Map.Entry<String, String> entry : tree._files.entrySet()) {
+            files.put(prefix + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : tree._dirs.entrySet()) {
+            flatten(objects, entry.getValue(),
+                    prefix + entry.getKey() + "/", files);
+        }
+    }
+
+    /** Adds the tree TREEID, and every tree and blob under it, to the
+     * versions of their paths, skipping the objects in SEEN (and the
+     * trees under them) and adding the others to SEEN.
+     * @param objects object store holding the trees
+     * @param treeID id of the tree
+     * @param prefix path of the tree's directory, followed by '/',
+     *        or "" for the root; its trees are listed under PREFIX
+     * @param seen ids of the objects already listed
+     * @param versions maps paths to the ids of their versions
+     */
+    static void collect(ObjectStore objects, String treeID, String prefix,
+                        Set<String> seen,
+                        Map<String, List<String>> versions) {
+        if (treeID.equals(EMPTY) || !seen.add(treeID)) {
+            return;
+        }
+        versions.computeIfAbsent(prefix, k -> new ArrayList<>()).add(treeID);
+        Tree tree = read(objects, treeID);
+        for (Map.Entry<String, String> entry : tree._files.entrySet()) {
+            if (seen.add(entry.getValue())) {
+                versions.computeIfAbsent(prefix + entry.getKey(),
+                        k -> new ArrayList<>()).add(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : tree._dirs.entrySet()) {
+            collect(objects, entry.getValue(),
+                    prefix + entry.getKey() + "/", seen, versions);
+        }
+    }
+
+    /** Applies CHANGES to the tree TREEID, storing every new tree.
+     * Only the trees of the directories containing a changed path
+     * are read and rewritten.
+     * @param objects object store holding the trees
+     * @param treeID id of the tree
+     * @param changes maps paths to their new blob ids, or to null
+     *        for files that are removed
+     * @return id of the new tree
+     */
+    static String update(ObjectStore objects, String treeID,
+                         SortedMap<String, String> changes) {
+        if (changes.isEmpty()) {
+            return treeID;
+        }
+        Tree tree = read(objects, treeID).copy();
+        while (!changes.isEmpty()) {
+            String path = changes.firstKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                String blobID = changes.get(path);
+                if (blobID == null) {
+                    tree._files.remove(path);
+                } else {
+                    tree._files.put(path, blobID);
+                }
+                changes = changes.tailMap(path + "\0");
+                continue;
+            }
+            String dir = path.substring(0, slash);
+            String end = dir + (char) ('/' + 1);
+            TreeMap<String, String> subChanges = new TreeMap<>();
+            for (Map.Entry<String, String> entry
+                     : changes.subMap(dir + "/", end).entrySet()) {
+                subChanges.put(entry.getKey().substring(slash + 1),
+                        entry.getValue());
+            }
+            String subtree = update(objects,
+                    tree._dirs.getOrDefault(dir, EMPTY), subChanges);
+            if (subtree.equals(EMPTY)) {
+                tree._dirs.remove(dir);
+            } else {
+                tree._dirs.put(dir, subtree);
+            }
+            changes = changes.tailMap(end);
+        }
+        if (tree._files.isEmpty() && tree._dirs.isEmpty()) {
+            return EMPTY;
+        }
+        String id = objects.put(tree.encode());
+        synchronized (CACHE) {
+            CACHE.put(id, tree);
+        }
+        return id;
+    }
+
+    /** Adds to CHANGES every file whose blob id differs between the
+     * trees ID1 and ID2. Subtrees with equal ids are not read.
+     * @param objects object store holding the trees
+     * @param id1 id of the first tree
+     * @param id2 id of the second tree
+     * @param prefix path of the trees' directory, followed by '/',
+     *        or "" for the root
+     * @param changes maps paths to their blob ids in the first and
+     *        second trees (null where there is no such file)
+     */
+    static void diff(ObjectStore objects, String id1, String id2,
+                     String prefix, Map<String, String[]> changes) {
+        if (id1.equals(id2)) {
+            return;
+        }
+        Tree tree1 = read(objects, id1);
+        Tree tree2 = read(objects, id2);
+        TreeSet<String> names = new TreeSet<>(tree1._files.keySet());
+        names.addAll(tree2._files.keySet());
+        for (String name : names) {
+            String blob1 = tree1._files.get(name);
+            String blob2 = tree2._files.get(name);
+            if (!Objects.equals(blob1, blob2)) {
+                changes.put(prefix + name, new String[] { blob1, blob2 });
+            }
+        }
+        names = new TreeSet<>(tree1._dirs.keySet());
+        names.addAll(tree2._dirs.keySet());
+        for (String name : names) {
+            diff(objects, tree1._dirs.getOrDefault(name, EMPTY),
+                    tree2._dirs.getOrDefault(name, EMPTY),
+                    prefix + name + "/", changes);
+        }
+    }
+
+    /** Accessor method that gets a modifiable copy of this tree.
+     * @return copy of this tree
+     */
+    private Tree copy() {
+        Tree tree = new Tree();
+        tree._files.putAll(_files);
+        tree._dirs.putAll(_dirs);
+        return tree;
+    }
+
+    /** Writes ENTRIES to OUT.
+     * @param out destination
+     * @param entries maps names to ids
+     */
+    private static void writeEntries(RecordOutput out,
+                                     TreeMap<String, String> entries) {
+        out.writeVarInt(entries.size());
+        out.writePaths(entries.keySet());
+        for (String id : entries.values()) {
+            out.writeHash(id);
+        }
+    }
+
+    /** Reads entries written by writeEntries from IN into ENTRIES.
+     * @param in source
+     * @param entries maps names to ids
+     */
+    private static void readEntries(RecordInput in,
+                                    TreeMap<String, String> entries) {
+        String[] names = in.readPaths(in.readVarInt());
+        for (String name : names) {
+            entries.put(name, in.readHash());
+        }
+    }
+
+    /** Kind of tree records.*/
+    static final String MAGIC = "GLTR";
+    /** Current version of the tree record format.*/
+    static final int VERSION = 1;
+    /** Id of the empty tree, which is never stored.*/
+    static final String EMPTY = Utils.sha1(new Tree().encode());
+    /** Maximum number of trees kept in the cache.*/
+    private static final int CACHE_SIZE = 4096;
+    /** Trees read recently, by id. Trees never change, so they can
+     * be shared by every repository and thread.*/
+    private static final Map<String, Tree> CACHE =
+            new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Tree> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    /** Maps the names of the files in this directory to their
+     * blob ids.*/
+    private final TreeMap<String, String> _files = new TreeMap<>();
+    /** Maps the names of the subdirectories to their tree ids.*/
+    private final TreeMap<String, String> _dirs = new TreeMap<>();
+}
@@ -0,0 +1,66 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/** Tests of tree objects.
+ *  @author Oumar Balde
+ */
+public class TreeTest {
+
+    @Test
+    public void updateSharesUnchangedSubtrees() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        try {
+            ObjectStore objects = new ObjectStore(dir);
+            TreeMap<String, String> files = new TreeMap<>();
+            files.put("a.txt", Utils.sha1("a"));
+            files.put("src/main/x.java", Utils.sha1("x"));
+            files.put("src/main/y.java", Utils.sha1("y"));
+            files.put("src/test/t.java", Utils.sha1("t"));
+            files.put("src.txt", Utils.sha1("s"));
+            String tree1 = Tree.update(objects, Tree.EMPTY,
+                    new TreeMap<>(files));
+            TreeMap<String, String> read = new TreeMap<>();
+            Tree.flatten(objects, tree1, "", read);
+            assertEquals(files, read);
+            assertEquals(Utils.sha1("y"),
+                    Tree.lookup(objects, tree1, "src/main/y.java"));
+            assertNull(Tree.lookup(objects, tree1, "src/main"));
+            assertNull(Tree.lookup(objects, tree1, "nope/x.java"));
+
+            TreeMap<String, String> changes = new TreeMap<>();
+            changes.put("src/main/x.java", Utils.sha1("x2"));
+            changes.put("src/test/t.java", null);
+            changes.put("b.txt", Utils.sha1("b"));
+            String tree2 = Tree.update(objects, tree1, changes);
+            TreeMap<String, String[]> diff = new TreeMap<>();
+            Tree.diff(objects, tree1, tree2, "", diff);
+            assertEquals(Arrays.asList("b.txt", "src/main/x.java",
+                    "src/test/t.java"), Arrays.asList(diff.keySet().toArray()));
+            assertArrayEquals(new String[] { null, Utils.sha1("b") },
+                    diff.get("b.txt"));
+            assertArrayEquals(new String[] { Utils.sha1("t"), null },
+                    diff.get("src/test/t.java"));
+
+            changes.clear();
+            changes.put("src/main/x.java", Utils.sha1("x"));
+            changes.put("src/test/t.java", Utils.sha1("t"));
+            changes.put("b.txt", null);
+            assertEquals(tree1, Tree.update(objects, tree2, changes));
+            changes.clear();
+            for (String path : files.keySet()) {
+                changes.put(path, null);
+            }
+            assertEquals(Tree.EMPTY, Tree.update(objects, tree1, changes));
+        } finally {
+            ObjectStoreTest.delete(dir);
+        }
+    }
+}
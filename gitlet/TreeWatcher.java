@@ -0,0 +1,255 @@
+package gitlet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watcher of the working directory and its subdirectories, used by a
+ * long-lived process to know which files exist and which may have
+ * changed without listing the directories or reading any file's
+ * metadata. Directories created after the watcher started are watched
+ * as soon as their creation is seen.
+ * The watcher keeps the set of plain files in the directory and the
+ * blob ids of "clean" files, whose contents are known not to have
+ * changed since the caller last hashed them; any event on a file
+ * makes it dirty again. If events were lost (overflow), the directory is
+ * listed again and every file is dirty.
+ * Events are delivered asynchronously, so before each use the
+ * watcher creates a cookie file in the .gitlet directory (watched by
+ * the same service) and waits for its event: every change made
+ * before the cookie was created has then been seen.
+ * @author Oumar Balde
+ */
+public class TreeWatcher implements Closeable {
+
+    /** TreeWatcher constructor. Starts watching DIR.
+     * @param dir the working directory
+     * @param cookieDir subdirectory of DIR in which to create cookie
+     *        files; no directory with its name is watched
+     */
+    TreeWatcher(File dir, File cookieDir) throws IOException {
+        _dir = dir;
+        _skip = cookieDir.getName();
+        _cookie = new File(cookieDir, COOKIE);
+        _service = FileSystems.getDefault().newWatchService();
+        _dirKey = watch(dir, "");
+        _cookieKey = cookieDir.toPath().register(_service,
+                StandardWatchEventKinds.ENTRY_CREATE);
+        rescan();
+    }
+
+    /** Processes every change made to the working directory so far.*/
+    public void sync() {
+        try {
+            _cookie.delete();
+            if (!_cookie.createNewFile()) {
+                rescan();
+                return;
+            }
+            long deadline = System.nanoTime() + COOKIE_TIMEOUT;
+            boolean seen = false;
+            while (!seen) {
+                WatchKey key = _service.poll(deadline - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+                if (key == null) {
+                    rescan();
+                    return;
+                }
+                seen = process(key);
+            }
+            WatchKey key;
+            while ((key = _service.poll()) != null) {
+                process(key);
+            }
+        } catch (IOException | InterruptedException excp) {
+            rescan();
+        } finally {
+            _cookie.delete();
+        }
+    }
+
+    /** Accessor method that gets the plain files of the working
+     * directory and its subdirectories, as of the last sync.
+     * @return paths of the files, in sorted order
+     */
+    public TreeSet<String> fileNames() {
+        return _files;
+    }
+
+    /** Accessor method that gets the blob id of FILENAME, if the
+     * file is clean as of the last sync.
+     * @param fileName name of a file
+     * @return blob id given to markClean, or null if the file is dirty
+     */
+    public String cleanBlobID(String fileName) {
+        return _clean.get(fileName);
+    }
+
+    /** Records that FILENAME has just been hashed to BLOBID, so that
+     * it stays clean until the next event on it. May be called from
+     * several threads at once, but not during sync.
+     * @param fileName name of a file
+     * @param blobID hash of the file's contents
+     */
+    public void markClean(String fileName, String blobID) {
+        _clean.put(fileName, blobID);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _service.close();
+    }
+
+    /** Applies the events pending on KEY.
+     * @param key signalled key
+     * @return true iff the events include the creation of the cookie
+     */
+    private boolean process(WatchKey key) {
+        boolean cookie = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rescan();
+                continue;
+            }
+            String name = ((Path) event.context()).toString();
+            if (key == _cookieKey) {
+                cookie |= name.equals(COOKIE);
+                continue;
+            }
+            String prefix = _prefixes.get(key);
+            if (prefix == null || name.equals(_skip)) {
+                continue;
+            }
+            changed(prefix + name,
+                    event.kind() == StandardWatchEventKinds.ENTRY_CREATE);
+        }
+        if (!key.reset()) {
+            if (key == _dirKey) {
+                throw Utils.error("Working directory is no longer watched.");
+            }
+            _prefixes.remove(key);
+        }
+        return cookie;
+    }
+
+    /** Records that the entry at PATH has changed.
+     * @param path path of a file or directory
+     * @param created true iff the entry has just been created
+     */
+    private void changed(String path, boolean created) {
+        File file = new File(_dir, path);
+        _clean.remove(path);
+        if (file.isFile()) {
+            _files.add(path);
+        } else if (file.isDirectory()) {
+            if (created) {
+                forgetTree(path);
+                try {
+                    watchTree(file, path + "/");
+                } catch (IOException excp) {
+                    rescan();
+                    return;
+                }
+                for (String name : Utils.plainFilePathsIn(file, _skip)) {
+                    _files.add(path + "/" + name);
+                }
+            }
+        } else {
+            _files.remove(path);
+            forgetTree(path);
+        }
+    }
+
+    /** Forgets every file under the directory at PATH.
+     * @param path path of a directory
+     */
+    private void forgetTree(String path) {
+        String prefix = path + "/";
+        _files.subSet(prefix, path + (char) ('/' + 1)).clear();
+        _clean.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /** Watches DIR, known by the prefix PREFIX.
+     * @param dir a directory
+     * @param prefix path of DIR followed by '/', or "" for the root
+     * @return key of DIR
+     */
+    private WatchKey watch(File dir, String prefix) throws IOException {
+        WatchKey key = dir.toPath().register(_service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        _prefixes.put(key, prefix);
+        return key;
+    }
+
+    /** Watches the subdirectories of DIR, recursively.
+     * @param dir a watched directory
+     * @param prefix path of DIR followed by '/', or "" for the root
+     */
+    private void watchTree(File dir, String prefix) throws IOException {
+        if (!prefix.isEmpty()) {
+            watch(dir, prefix);
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory() && !file.getName().equals(_skip)) {
+                watchTree(file, prefix + file.getName() + "/");
+            }
+        }
+    }
+
+    /** Watches every directory and lists every file again, and
+     * forgets which files are clean.*/
+    private void rescan() {
+        try {
+            watchTree(_dir, "");
+        } catch (IOException excp) {
+            throw Utils.error("Cannot watch the working directory: %s",
+                    excp.getMessage());
+        }
+        _files = new TreeSet<>(Utils.plainFilePathsIn(_dir, _skip));
+        _clean.clear();
+    }
+
+    /** Name of the cookie file.*/
+    private static final String COOKIE = "watch-cookie";
+    /** Time after which a cookie is given up on, in nanoseconds.*/
+    private static final long COOKIE_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+    /** The working directory.*/
+    private final File _dir;
+    /** Name of the subdirectory of the working directory that is not
+     * watched.*/
+    private final String _skip;
+    /** The cookie file.*/
+    private final File _cookie;
+    /** Service delivering the events.*/
+    private final WatchService _service;
+    /** Key of the working directory.*/
+    private final WatchKey _dirKey;
+    /** Key of the directory holding the cookie.*/
+    private final WatchKey _cookieKey;
+    /** Maps the keys of the watched directories to their paths,
+     * followed by '/' ("" for the root).*/
+    private final HashMap<WatchKey, String> _prefixes = new HashMap<>();
+    /** Plain files of the working directory.*/
+    private TreeSet<String> _files;
+    /** Blob ids of the files unchanged since they were marked clean.*/
+    private final ConcurrentHashMap<String, String> _clean =
+            new ConcurrentHashMap<>();
+}
@@ -0,0 +1,62 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/** Tests of the working directory watcher.
+ *  @author Oumar Balde
+ */
+public class TreeWatcherTest {
+
+    @Test
+    public void seesChangesMadeBeforeSync() throws IOException {
+        File dir = Files.createTempDirectory("tree").toFile();
+        File cookies = new File(dir, ".gitlet");
+        cookies.mkdir();
+        File a = new File(dir, "a.txt");
+        Utils.writeContents(a, "a");
+        try (TreeWatcher watcher = new TreeWatcher(dir, cookies)) {
+            assertEquals(Arrays.asList("a.txt"),
+                    Arrays.asList(watcher.fileNames().toArray()));
+            watcher.markClean("a.txt", "1");
+            Utils.writeContents(new File(dir, "b.txt"), "b");
+            new File(dir, "sub").mkdir();
+            watcher.sync();
+            assertEquals(Arrays.asList("a.txt", "b.txt"),
+                    Arrays.asList(watcher.fileNames().toArray()));
+            assertEquals("1", watcher.cleanBlobID("a.txt"));
+            assertNull(watcher.cleanBlobID("b.txt"));
+            watcher.markClean("b.txt", "2");
+            Utils.writeContents(a, "a2");
+            new File(dir, "b.txt").delete();
+            watcher.sync();
+            assertEquals(Arrays.asList("a.txt"),
+                    Arrays.asList(watcher.fileNames().toArray()));
+            assertNull(watcher.cleanBlobID("a.txt"));
+            assertNull(watcher.cleanBlobID("b.txt"));
+            File deep = Utils.join(dir, "sub", "deep");
+            deep.mkdir();
+            Utils.writeContents(new File(deep, "c.txt"), "c");
+            watcher.sync();
+            assertEquals(Arrays.asList("a.txt", "sub/deep/c.txt"),
+                    Arrays.asList(watcher.fileNames().toArray()));
+            watcher.markClean("sub/deep/c.txt", "3");
+            Utils.writeContents(new File(deep, "c.txt"), "c2");
+            Utils.writeContents(new File(deep, "d.txt"), "d");
+            watcher.sync();
+            assertNull(watcher.cleanBlobID("sub/deep/c.txt"));
+            assertTrue(watcher.fileNames().contains("sub/deep/d.txt"));
+            ObjectStoreTest.delete(deep);
+            watcher.sync();
+            assertEquals(Arrays.asList("a.txt"),
+                    Arrays.asList(watcher.fileNames().toArray()));
+        } finally {
+            ObjectStoreTest.delete(dir);
+        }
+    }
+}
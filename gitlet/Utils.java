@@ -13,10 +13,14 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 
@@ -61,6 +65,38 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the lower-case hexadecimal numeral for BYTES. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, which
+     *  must have an even number of digits.  Throws
+     *  IllegalArgumentException if HEX is not such a numeral. */
+    static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("odd-length hex numeral");
+        }
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("improper hex numeral");
+            }
+            result[i] = (byte) ((hi << 4) | lo);
+        }
+        return result;
+    }
+
+    /** Hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -134,6 +170,45 @@ class Utils {
         }
     }
 
+    /** Write the result of concatenating the bytes in CONTENTS to FILE as
+     *  writeContents does, but through a temporary file that then replaces
+     *  FILE atomically, so that readers (or a later run, after a crash)
+     *  see either the old or the new contents, never part of them.
+     *  Throws IllegalArgumentException in case of problems. */
+    static void writeContentsAtomically(File file, Object... contents) {
+        File tmp = new File(file.getPath() + ".tmp");
+        writeContents(tmp, contents);
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append the result of concatenating the bytes in CONTENTS to FILE,
+     *  creating it as needed.  Each object in CONTENTS may be either a
+     *  String or a byte array.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static void appendContents(File file, Object... contents) {
+        try {
+            BufferedOutputStream str =
+                new BufferedOutputStream(Files.newOutputStream(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            for (Object obj : contents) {
+                if (obj instanceof byte[]) {
+                    str.write((byte[]) obj);
+                } else {
+                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            str.close();
+        } catch (IOException | ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -186,6 +261,39 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns a list of the paths of all plain files in the directory
+     *  DIR and its subdirectories, except those named SKIP, relative to
+     *  DIR with components separated by '/', in lexicographic order as
+     *  Java Strings.  Returns null if DIR does not denote a directory. */
+    static List<String> plainFilePathsIn(File dir, String skip) {
+        if (!dir.isDirectory()) {
+            return null;
+        }
+        ArrayList<String> paths = new ArrayList<>();
+        addPlainFilePaths(dir, "", skip, paths);
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /** Adds to PATHS the paths of the plain files in DIR and its
+     *  subdirectories, except those named SKIP, each preceded by
+     *  PREFIX. */
+    private static void addPlainFilePaths(File dir, String prefix,
+                                          String skip, List<String> paths) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile()) {
+                paths.add(prefix + file.getName());
+            } else if (file.isDirectory() && !file.getName().equals(skip)) {
+                addPlainFilePaths(file, prefix + file.getName() + "/",
+                                  skip, paths);
+            }
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,